@@ -0,0 +1,268 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Valuation of the change of investor's value between two dates.
+ * <p>
+ * Values as of both dates are computed in a single traversal of the fund graph and every fund is computed once
+ * per request. Holdings are derived from the value as of the first date plus the transactions made between
+ * the dates, quotes are looked up as of both dates. The arithmetic is the same as in
+ * {@link ValuationRunner#valuate(String, LocalDate)}, thus the change equals the difference of two valuations.
+ * <p>
+ * Afterwards the fund shares are propagated from the investor down the graph (parents before children) to
+ * attribute the change to the leaf investments.
+ */
+@Slf4j
+class ChangeValuator {
+
+    private static final Pair NO_VALUE = new Pair(null, null);
+    private static final Pair ZERO = new Pair(BigDecimal.ZERO, BigDecimal.ZERO);
+    /**
+     * Value of a fund which is being calculated, reaching such a fund again means it holds itself.
+     */
+    private static final Pair IN_PROGRESS = new Pair(BigDecimal.ZERO, BigDecimal.ZERO);
+
+    private final QuotesLoader quotesLoader;
+    private final InvestmentsLoader investmentsLoader;
+    private final TransactionsLoader transactionsLoader;
+
+    ChangeValuator(QuotesLoader quotesLoader, InvestmentsLoader investmentsLoader,
+            TransactionsLoader transactionsLoader) {
+        this.quotesLoader = quotesLoader;
+        this.investmentsLoader = investmentsLoader;
+        this.transactionsLoader = transactionsLoader;
+    }
+
+    ValuationChange valuate(String investorId, LocalDate from, LocalDate to, int contributions, Deadline deadline) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Date " + to + " is before " + from);
+        }
+
+        InvestmentsLoader.InvestorTree investorTree =
+                investmentsLoader.getInvestorTree(investmentsLoader.symbols().find(investorId));
+        if (investorTree == null) {
+            log.warn("Investor {} not found", investorId);
+            return new ValuationChange(investorId, from, to, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, List.of());
+        }
+
+        Request request = new Request(from, to, deadline);
+        Pair value = request.investmentValue(investorTree);
+        return new ValuationChange(investorId, from, to, value.from(), value.to(), value.to().subtract(value.from()),
+                request.largestContributions(investorTree, contributions));
+    }
+
+    /**
+     * Values as of the first and the second date, null means no value available.
+     */
+    private record Pair(BigDecimal from, BigDecimal to) {
+
+        Pair add(Pair other) {
+            return new Pair(
+                    other.from() == null ? from : from.add(other.from()),
+                    other.to() == null ? to : to.add(other.to()));
+        }
+    }
+
+    /**
+     * State of a single request.
+     */
+    private final class Request {
+
+        private final LocalDate from;
+        private final LocalDate to;
+        private final Deadline deadline;
+        private final SymbolTable symbols = investmentsLoader.symbols();
+
+        /**
+         * Values of funds, shared by all paths reaching the fund.
+         */
+        private final Map<Integer, Pair> fundValues = new HashMap<>();
+        /**
+         * Trees of computed funds in the order in which their computation finished (children before parents).
+         */
+        private final Map<Integer, InvestmentsLoader.InvestorTree> fundTrees = new LinkedHashMap<>();
+        /**
+         * Holdings by investment: number of shares, value of real estate or percentage of a fund.
+         */
+        private final Map<Integer, Pair> holdings = new HashMap<>();
+        /**
+         * Values of leaf investments.
+         */
+        private final Map<Integer, Pair> leafValues = new HashMap<>();
+
+        private Request(LocalDate from, LocalDate to, Deadline deadline) {
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        private Pair investmentValue(InvestmentsLoader.InvestorTree investmentTree) {
+            deadline.check();
+            Pair result = ZERO;
+            for (InvestmentsLoader.InvestmentTree underlying : investmentTree.getUnderlyings()) {
+                Pair underlyingValue = switch (underlying.getInvestmentType()) {
+                    case Stock -> calculateStockValue(underlying);
+                    case RealEstate -> calculateRealEstate(underlying);
+                    case Fonds -> calculateFund(underlying);
+                };
+                result = result.add(underlyingValue);
+            }
+            return result;
+        }
+
+        private Pair calculateFund(InvestmentsLoader.InvestmentTree investment) {
+            InvestmentsLoader.InvestorTree fundTree =
+                    investmentsLoader.getInvestorTree(investment.getAssetSymbol());
+            if (fundTree == null) {
+                log.warn("Fund {} has no investments", symbols.name(investment.getAssetSymbol()));
+                return ZERO;
+            }
+            Pair share = holding(investment);
+            if (isEmpty(share.from()) && isEmpty(share.to())) {
+                log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
+                return NO_VALUE;
+            }
+
+            // not computeIfAbsent, the recursion adds other funds to the map
+            Pair fundValue = fundValues.get(investment.getAssetSymbol());
+            if (fundValue == IN_PROGRESS) {
+                throw new IllegalStateException("Fund " + symbols.name(investment.getAssetSymbol()) + " holds itself");
+            }
+            if (fundValue == null) {
+                fundValues.put(investment.getAssetSymbol(), IN_PROGRESS);
+                fundValue = investmentValue(fundTree);
+                fundValues.put(investment.getAssetSymbol(), fundValue);
+                fundTrees.put(investment.getAssetSymbol(), fundTree);
+            }
+
+            return new Pair(fundShare(share.from(), fundValue.from()), fundShare(share.to(), fundValue.to()));
+        }
+
+        private Pair calculateRealEstate(InvestmentsLoader.InvestmentTree investment) {
+            // the transaction contains absolute value of the real estate, there is no adjustment defined anywhere
+            Pair value = holding(investment);
+            leafValues.put(investment.getInvestmentSymbol(), value);
+            return value;
+        }
+
+        private Pair calculateStockValue(InvestmentsLoader.InvestmentTree investment) {
+            Pair shares = holding(investment);
+            if (isEmpty(shares.from()) && isEmpty(shares.to())) {
+                log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
+                return NO_VALUE;
+            }
+
+            BigDecimal quoteFrom = quotesLoader.getQuote(investment.getAssetSymbol(), from);
+            BigDecimal quoteTo = from.equals(to)
+                    ? quoteFrom : quotesLoader.getQuote(investment.getAssetSymbol(), to);
+            Pair value = new Pair(stockValue(shares.from(), quoteFrom), stockValue(shares.to(), quoteTo));
+            leafValues.put(investment.getInvestmentSymbol(), value);
+            return value;
+        }
+
+        /**
+         * Holding as of the first date and the same holding adjusted by the transactions between the dates.
+         */
+        private Pair holding(InvestmentsLoader.InvestmentTree investment) {
+            BigDecimal holdingFrom = transactionsLoader.getValue(investment.getInvestmentSymbol(), from);
+            BigDecimal change = from.equals(to)
+                    ? null : transactionsLoader.getChange(investment.getInvestmentSymbol(), from, to);
+            BigDecimal holdingTo;
+            if (holdingFrom == null || change == null) {
+                holdingTo = holdingFrom == null ? change : holdingFrom;
+            } else {
+                holdingTo = holdingFrom.add(change);
+            }
+
+            Pair holding = new Pair(holdingFrom, holdingTo);
+            holdings.put(investment.getInvestmentSymbol(), holding);
+            return holding;
+        }
+
+        private List<ValuationChange.Contribution> largestContributions(
+                InvestmentsLoader.InvestorTree investorTree, int limit) {
+            Map<Integer, Pair> weights = new HashMap<>();
+            Map<Integer, ValuationChange.Contribution> contributions = new HashMap<>();
+
+            propagate(investorTree, new Pair(BigDecimal.ONE, BigDecimal.ONE), weights, contributions);
+            // reversed order of finished computations is a topological order, all parents are propagated first
+            List<Integer> funds = new ArrayList<>(fundTrees.keySet());
+            for (int i = funds.size() - 1; i >= 0; i--) {
+                Pair weight = weights.get(funds.get(i));
+                if (weight != null) {
+                    propagate(fundTrees.get(funds.get(i)), weight, weights, contributions);
+                }
+            }
+
+            return contributions.values()
+                    .stream()
+                    .sorted(Comparator.comparing((ValuationChange.Contribution c) -> c.change().abs()).reversed())
+                    .limit(limit)
+                    .toList();
+        }
+
+        private void propagate(InvestmentsLoader.InvestorTree tree, Pair weight, Map<Integer, Pair> weights,
+                               Map<Integer, ValuationChange.Contribution> contributions) {
+            deadline.check();
+            for (InvestmentsLoader.InvestmentTree underlying : tree.getUnderlyings()) {
+                if (underlying.getInvestmentType() == InvestmentsLoader.InvestmentType.Fonds) {
+                    Pair share = holdings.get(underlying.getInvestmentSymbol());
+                    if (share != null && fundTrees.containsKey(underlying.getAssetSymbol())) {
+                        // percentage of the fund, 100 = 100%
+                        Pair childWeight = new Pair(
+                                weight.from().multiply(orZero(share.from()).movePointLeft(2)),
+                                weight.to().multiply(orZero(share.to()).movePointLeft(2)));
+                        weights.merge(underlying.getAssetSymbol(), childWeight, Pair::add);
+                    }
+                    continue;
+                }
+
+                Pair value = leafValues.get(underlying.getInvestmentSymbol());
+                if (value == null) {
+                    continue;
+                }
+                BigDecimal change = weight.to().multiply(orZero(value.to()))
+                        .subtract(weight.from().multiply(orZero(value.from())));
+                contributions.merge(underlying.getInvestmentSymbol(),
+                        new ValuationChange.Contribution(symbols.name(underlying.getInvestmentSymbol()),
+                                underlying.getInvestmentType(), symbols.name(underlying.getAssetSymbol()), change),
+                        (c1, c2) -> new ValuationChange.Contribution(
+                                c1.investmentId(), c1.investmentType(), c1.assetId(), c1.change().add(c2.change())));
+            }
+        }
+    }
+
+    private static BigDecimal fundShare(BigDecimal share, BigDecimal fundValue) {
+        if (isEmpty(share)) {
+            return null;
+        }
+        // Fund value is its value multiplied by total investments (divide by 100, because 100=100%)
+        return share.multiply(fundValue).divide(BigDecimal.valueOf(100), RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal stockValue(BigDecimal shares, BigDecimal quote) {
+        if (isEmpty(shares) || quote == null) {
+            return null;
+        }
+        // number of shares multiplied by their value
+        return quote.multiply(shares);
+    }
+
+    private static boolean isEmpty(BigDecimal value) {
+        return value == null || value.compareTo(BigDecimal.ZERO) == 0;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+}
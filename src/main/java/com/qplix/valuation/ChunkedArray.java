@@ -0,0 +1,136 @@
+package com.qplix.valuation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Immutable array of values indexed by symbol, e.g. the quotes of every ISIN.
+ * <p>
+ * The values are kept in chunks of {@code CHUNK_SIZE} references, so a modified copy shares all untouched chunks
+ * with the original. Appending to a few symbols copies the outer array and the touched chunks instead of a
+ * reference per symbol. Chunks without values are not allocated at all.
+ *
+ * @param <T> type of the values
+ */
+final class ChunkedArray<T> {
+
+    private static final int CHUNK_SHIFT = 8;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final ChunkedArray<?> EMPTY = new ChunkedArray<>(new Object[0][]);
+
+    private final Object[][] chunks;
+
+    private ChunkedArray(Object[][] chunks) {
+        this.chunks = chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ChunkedArray<T> empty() {
+        return (ChunkedArray<T>) EMPTY;
+    }
+
+    /**
+     * Get value of given symbol.
+     *
+     * @param symbol symbol of the value
+     * @return the value or null if there is none (including symbols out of range)
+     */
+    T get(int symbol) {
+        return get(chunks, symbol);
+    }
+
+    /**
+     * Values which are not null, ordered by their symbols.
+     *
+     * @return stream of the values
+     */
+    @SuppressWarnings("unchecked")
+    Stream<T> values() {
+        return Arrays.stream(chunks)
+                .filter(Objects::nonNull)
+                .flatMap(Arrays::stream)
+                .filter(Objects::nonNull)
+                .map(value -> (T) value);
+    }
+
+    /**
+     * Estimate memory held by the array itself, without the values.
+     *
+     * @return estimated bytes
+     */
+    long footprint() {
+        long bytes = Footprint.object(Footprint.REFERENCE) + Footprint.array(chunks.length, Footprint.REFERENCE);
+        for (Object[] chunk : chunks) {
+            if (chunk != null) {
+                bytes += Footprint.array(CHUNK_SIZE, Footprint.REFERENCE);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Create writer of a modified copy, this array is not modified.
+     *
+     * @return writer starting with the values of this array
+     */
+    Writer<T> writer() {
+        return new Writer<>(chunks);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T get(Object[][] chunks, int symbol) {
+        if (symbol < 0 || symbol >>> CHUNK_SHIFT >= chunks.length) {
+            return null;
+        }
+        Object[] chunk = chunks[symbol >>> CHUNK_SHIFT];
+        return chunk == null ? null : (T) chunk[symbol & CHUNK_MASK];
+    }
+
+    /**
+     * Copy-on-write modification, every chunk is copied when it is modified for the first time.
+     *
+     * @param <T> type of the values
+     */
+    static final class Writer<T> {
+
+        private Object[][] chunks;
+        private final BitSet copied = new BitSet();
+
+        private Writer(Object[][] chunks) {
+            this.chunks = chunks.clone();
+        }
+
+        T get(int symbol) {
+            return ChunkedArray.get(chunks, symbol);
+        }
+
+        void set(int symbol, T value) {
+            int chunkIndex = symbol >>> CHUNK_SHIFT;
+            if (chunkIndex >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkIndex + 1);
+            }
+            if (!copied.get(chunkIndex)) {
+                Object[] chunk = chunks[chunkIndex];
+                chunks[chunkIndex] = chunk == null ? new Object[CHUNK_SIZE] : chunk.clone();
+                copied.set(chunkIndex);
+            }
+            chunks[chunkIndex][symbol & CHUNK_MASK] = value;
+        }
+
+        /**
+         * Create array of the written values, further writes copy the chunks again.
+         *
+         * @return the array
+         */
+        ChunkedArray<T> build() {
+            ChunkedArray<T> result = new ChunkedArray<>(chunks);
+            chunks = chunks.clone();
+            copied.clear();
+            return result;
+        }
+    }
+}
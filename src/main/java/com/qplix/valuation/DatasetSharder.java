@@ -0,0 +1,138 @@
+package com.qplix.valuation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Splits the data set into shards along the components of the fund graph.
+ * <p>
+ * Every shard contains the investments of its investors with all the funds they reach, the transactions of those
+ * investments and the quotes of the ISINs they hold (quotes can be part of many shards). Each shard can be loaded
+ * by the regular loaders and valuated without the others.
+ */
+@Slf4j
+public class DatasetSharder {
+
+    public static final String INVESTMENTS_FILE = "Investments.csv";
+    public static final String TRANSACTIONS_FILE = "Transactions.csv";
+    public static final String QUOTES_FILE = "Quotes.csv";
+
+    private DatasetSharder() {
+    }
+
+    /**
+     * Directory of given shard.
+     *
+     * @param targetDirectory directory containing all shards
+     * @param shard           index of the shard
+     * @return directory of the shard
+     */
+    public static Path shardDirectory(Path targetDirectory, int shard) {
+        return targetDirectory.resolve("shard-" + shard);
+    }
+
+    /**
+     * Write shards into {@code targetDirectory/shard-N} directories.
+     *
+     * @param investmentsFile  name of the investments file
+     * @param transactionsFile name of the transactions file
+     * @param quotesFile       name of the quotes file
+     * @param shards           number of shards
+     * @param targetDirectory  directory to write the shards to
+     * @return partitions written to the shards (in the order of the shards)
+     */
+    public static List<InvestmentsLoader.Partition> write(String investmentsFile, String transactionsFile,
+                                                          String quotesFile, int shards, Path targetDirectory) {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load(investmentsFile);
+        List<InvestmentsLoader.Partition> partitions = investmentsLoader.partition(shards);
+
+        Map<String, Integer> shardByInvestor = new HashMap<>();
+        for (InvestmentsLoader.Partition partition : partitions) {
+            for (String investorId : partition.investorIds()) {
+                shardByInvestor.put(investorId, partition.index());
+            }
+        }
+
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                Files.createDirectories(shardDirectory(targetDirectory, shard));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create shard directories in " + targetDirectory, e);
+        }
+
+        // investments decide the shards of transactions (by investment) and quotes (by ISIN)
+        Map<String, Integer> shardByInvestment = new HashMap<>();
+        Map<String, Set<Integer>> shardsByIsin = new HashMap<>();
+        split(investmentsFile, INVESTMENTS_FILE, shards, targetDirectory, csvRecord -> {
+            Integer shard = shardByInvestor.get(csvRecord.get("InvestorId"));
+            shardByInvestment.put(csvRecord.get("InvestmentId"), shard);
+            if ("Stock".equals(csvRecord.get("InvestmentType"))) {
+                shardsByIsin.computeIfAbsent(csvRecord.get("ISIN"), k -> new HashSet<>()).add(shard);
+            }
+            return Set.of(shard);
+        });
+        split(transactionsFile, TRANSACTIONS_FILE, shards, targetDirectory, csvRecord -> {
+            Integer shard = shardByInvestment.get(csvRecord.get("InvestmentId"));
+            return shard == null ? Set.of() : Set.of(shard);
+        });
+        split(quotesFile, QUOTES_FILE, shards, targetDirectory,
+                csvRecord -> shardsByIsin.getOrDefault(csvRecord.get("ISIN"), Set.of()));
+
+        log.info("Written {} shards to {}", shards, targetDirectory);
+        return partitions;
+    }
+
+    private static void split(String fileName, String shardFileName, int shards, Path targetDirectory,
+                              ShardSelector selector) {
+        List<BufferedWriter> writers = new ArrayList<>();
+        try (Reader reader = ResourceReaderFactory.resourceFileReader(fileName);
+             CSVParser csvParser = ResourceReaderFactory.csvParser(reader)) {
+            String header = String.join(";", csvParser.getHeaderNames());
+            for (int shard = 0; shard < shards; shard++) {
+                BufferedWriter writer = Files.newBufferedWriter(
+                        shardDirectory(targetDirectory, shard).resolve(shardFileName));
+                writers.add(writer);
+                writer.write(header);
+                writer.newLine();
+            }
+
+            for (CSVRecord csvRecord : csvParser) {
+                String line = String.join(";", csvRecord.values());
+                for (int shard : selector.shards(csvRecord)) {
+                    writers.get(shard).write(line);
+                    writers.get(shard).newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to split " + fileName + " into shards", e);
+        } finally {
+            for (BufferedWriter writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close shard file", e);
+                }
+            }
+        }
+    }
+
+    private interface ShardSelector {
+
+        Set<Integer> shards(CSVRecord csvRecord);
+    }
+}
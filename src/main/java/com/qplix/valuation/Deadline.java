@@ -0,0 +1,84 @@
+package com.qplix.valuation;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Point in time after which a valuation gives up.
+ * <p>
+ * The valuation checks the deadline cooperatively while it walks the fund graph, an expired deadline (or an
+ * interrupted thread) stops it with {@link CancellationException}. The deadline also bounds the wait for a load
+ * to finish before the valuation starts.
+ */
+public final class Deadline {
+
+    /**
+     * Deadline which never expires, the valuation is not stopped by interrupts either.
+     */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Create deadline expiring after given time from now.
+     *
+     * @param timeout time given to the valuation
+     * @return the deadline
+     */
+    public static Deadline after(Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    public boolean isExpired() {
+        return bounded && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Stop the work if the deadline expired or the thread was interrupted, {@link #NONE} never stops it.
+     *
+     * @throws CancellationException if the work has to stop
+     */
+    public void check() {
+        if (!bounded) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Valuation was interrupted");
+        }
+        if (isExpired()) {
+            throw new CancellationException("Valuation exceeded its deadline");
+        }
+    }
+
+    /**
+     * Acquire lock, waiting at most until the deadline.
+     *
+     * @param lock lock to acquire
+     * @throws CancellationException if the deadline expired or the thread was interrupted while waiting
+     */
+    void lock(Lock lock) {
+        if (!bounded) {
+            lock.lock();
+            return;
+        }
+        try {
+            if (!lock.tryLock(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new CancellationException("Valuation exceeded its deadline waiting for a load");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Valuation was interrupted");
+        }
+    }
+}
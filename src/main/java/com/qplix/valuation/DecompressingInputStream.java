@@ -0,0 +1,130 @@
+package com.qplix.valuation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gzip decompressed stream, the decompression runs on a separate thread ahead of the reader.
+ * <p>
+ * The decompressing thread fills a bounded queue of chunks, so reading the compressed data, decompressing it
+ * and parsing the result overlap while at most {@code CHUNKS * CHUNK_SIZE} bytes are buffered.
+ */
+@Slf4j
+class DecompressingInputStream extends InputStream {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int CHUNKS = 16;
+
+    /**
+     * Marks the end of the data.
+     */
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS);
+    private final Thread decompressor;
+    private volatile Throwable failure;
+
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean ended;
+
+    /**
+     * Start decompressing given stream.
+     *
+     * @param compressed gzip compressed stream (closed once decompressed)
+     * @param name       name of the input used in the thread name
+     */
+    DecompressingInputStream(InputStream compressed, String name) {
+        this.decompressor = new Thread(() -> decompress(compressed), "decompress-" + name);
+        this.decompressor.setDaemon(true);
+        this.decompressor.start();
+    }
+
+    private void decompress(InputStream compressed) {
+        boolean closed = false;
+        try (InputStream input = new GZIPInputStream(compressed, CHUNK_SIZE)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = input.readNBytes(buffer, 0, CHUNK_SIZE)) > 0) {
+                chunks.put(Arrays.copyOf(buffer, read));
+            }
+        } catch (InterruptedException e) {
+            closed = true; // closed by the reader, nobody waits for the end
+        } catch (Throwable e) {
+            failure = e; // any failure has to reach the reader, otherwise it waits for the end forever
+        } finally {
+            if (!closed) {
+                end();
+            }
+        }
+    }
+
+    private void end() {
+        try {
+            chunks.put(END);
+        } catch (InterruptedException e) {
+            log.debug("Decompression closed before the end was read");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, target, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+        decompressor.interrupt();
+        chunks.clear();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == chunk.length) {
+            if (ended) {
+                return false;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reading of decompressed data was interrupted");
+            }
+            position = 0;
+            if (chunk == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException("Decompression failed", failure);
+                }
+            }
+        }
+        return true;
+    }
+}
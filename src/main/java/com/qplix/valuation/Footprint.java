@@ -0,0 +1,168 @@
+package com.qplix.valuation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Estimated memory footprint of loaded data, e.g. for sizing of containers.
+ * <p>
+ * The bytes are estimated from the shape of the structures for a 64-bit JVM with compressed references,
+ * nothing is measured. Identifiers are counted once by the {@link SymbolTable} holding them.
+ *
+ * @param structures footprints of the individual structures
+ */
+public record Footprint(List<Structure> structures) {
+
+    public static final String QUOTES = "quotes";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String INVESTMENTS = "investments";
+    public static final String INVESTOR_TREES = "investorTrees";
+    public static final String SYMBOLS = "symbols";
+
+    static final long REFERENCE = 4;
+    static final long LOCAL_DATE = object(4 + 2 + 2);
+    static final long BIG_DECIMAL = object(REFERENCE + 4 + 4 + 8 + REFERENCE);
+    static final long INTEGER = object(4);
+    static final long TREE_MAP = object(7 * REFERENCE + 4 + 4);
+    static final long TREE_MAP_ENTRY = object(5 * REFERENCE + 1);
+    static final long HASH_MAP_NODE = object(4 + 3 * REFERENCE);
+
+    private static final long HEADER = 12;
+    private static final long ARRAY_HEADER = 16;
+    private static final long ARRAY_LIST = object(4 + 4 + REFERENCE);
+    private static final int ARRAY_LIST_CAPACITY = 10;
+
+    public Footprint {
+        structures = List.copyOf(structures);
+    }
+
+    /**
+     * Combine footprints of different data.
+     *
+     * @param footprints footprints to combine
+     * @return footprint with the structures of all given footprints
+     */
+    public static Footprint of(Footprint... footprints) {
+        List<Structure> structures = new ArrayList<>();
+        for (Footprint footprint : footprints) {
+            structures.addAll(footprint.structures());
+        }
+        return new Footprint(structures);
+    }
+
+    static Footprint of(Structure... structures) {
+        return new Footprint(Arrays.asList(structures));
+    }
+
+    /**
+     * Get structure of given name.
+     *
+     * @param name name of the structure, e.g. {@link #TRANSACTIONS}
+     * @return the structure
+     * @throws IllegalArgumentException if there is no such structure
+     */
+    public Structure structure(String name) {
+        return structures.stream()
+                .filter(structure -> structure.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No structure " + name));
+    }
+
+    public long heapBytes() {
+        return structures.stream().mapToLong(Structure::heapBytes).sum();
+    }
+
+    public long offHeapBytes() {
+        return structures.stream().mapToLong(Structure::offHeapBytes).sum();
+    }
+
+    /**
+     * Project heap bytes of a data set of different size, each structure grows in proportion to its records.
+     *
+     * @param records number of records by structure name, structures which are not listed keep their size
+     * @return projected heap bytes
+     */
+    public long projectHeapBytes(Map<String, Long> records) {
+        for (String name : records.keySet()) {
+            structure(name); // fail on misspelled names rather than silently ignoring them
+        }
+        return structures.stream()
+                .mapToLong(structure ->
+                        structure.projectHeapBytes(records.getOrDefault(structure.name(), structure.records())))
+                .sum();
+    }
+
+    @Override
+    public String toString() {
+        return structures.stream()
+                .map(Structure::toString)
+                .collect(Collectors.joining(", ", "heap " + heapBytes() / 1024 + " KiB, off heap "
+                        + offHeapBytes() / 1024 + " KiB (", ")"));
+    }
+
+    /**
+     * Size of an object with fields of given total size.
+     */
+    static long object(long fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    /**
+     * Size of an array.
+     */
+    static long array(long length, long elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * Size of an ArrayList without its elements, the capacity is assumed to be the size or the default capacity.
+     */
+    static long arrayList(long size) {
+        return ARRAY_LIST + array(Math.max(size, ARRAY_LIST_CAPACITY), REFERENCE);
+    }
+
+    /**
+     * Size of a String of Latin-1 characters.
+     */
+    static long string(String value) {
+        return object(REFERENCE + 4 + 1 + 1) + array(value.length(), 1);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Footprint of a single structure.
+     *
+     * @param name           name of the structure
+     * @param records        number of records, e.g. loaded transactions
+     * @param distinctKeys   number of distinct keys the records are indexed by, e.g. investments
+     * @param heapBytes      estimated bytes retained on heap
+     * @param offHeapBytes   bytes held in direct buffers or memory mapped files
+     */
+    public record Structure(String name, long records, long distinctKeys, long heapBytes, long offHeapBytes) {
+
+        /**
+         * Project heap bytes for given number of records, assuming the same number of records per key.
+         *
+         * @param records projected number of records
+         * @return projected heap bytes
+         */
+        public long projectHeapBytes(long records) {
+            if (this.records == 0) {
+                return heapBytes;
+            }
+            return Math.round((double) heapBytes * records / this.records);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + records + " records, " + distinctKeys + " keys, " + heapBytes / 1024 + " KiB"
+                    + (offHeapBytes > 0 ? " + " + offHeapBytes / 1024 + " KiB off heap" : "");
+        }
+    }
+}
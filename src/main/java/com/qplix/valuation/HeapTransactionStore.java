@@ -0,0 +1,169 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Transactions held on heap in a sorted map per investment.
+ */
+class HeapTransactionStore implements TransactionStore {
+
+    static final HeapTransactionStore EMPTY = new HeapTransactionStore(new SymbolTable(), ChunkedArray.empty());
+
+    private final SymbolTable symbols;
+
+    /**
+     * Transaction values indexed by investment symbol (null for symbols which are not investments with transactions)
+     */
+    private final ChunkedArray<NavigableMap<LocalDate, List<BigDecimal>>> transactions;
+
+    private HeapTransactionStore(
+            SymbolTable symbols, ChunkedArray<NavigableMap<LocalDate, List<BigDecimal>>> transactions) {
+        this.symbols = symbols;
+        this.transactions = transactions;
+    }
+
+    @Override
+    public BigDecimal getValue(String investmentId, LocalDate date) {
+        return getValue(symbols.find(investmentId), date);
+    }
+
+    @Override
+    public BigDecimal getValue(int investmentSymbol, LocalDate date) {
+        NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment = transactionsFor(investmentSymbol);
+        if (transactionsForInvestment == null) {
+            return null;
+        }
+
+        // this will return value strictly before given 'date'
+        return sum(transactionsForInvestment.headMap(date, false));
+    }
+
+    @Override
+    public BigDecimal getChange(String investmentId, LocalDate from, LocalDate to) {
+        return getChange(symbols.find(investmentId), from, to);
+    }
+
+    @Override
+    public BigDecimal getChange(int investmentSymbol, LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment = transactionsFor(investmentSymbol);
+        if (transactionsForInvestment == null) {
+            return null;
+        }
+
+        // only transactions of the changed period are summed
+        return sum(transactionsForInvestment.subMap(from, true, to, false));
+    }
+
+    @Override
+    public TransactionStore.Builder appender(SymbolTable symbols) {
+        return new Appender(symbols, transactions);
+    }
+
+    @Override
+    public int size() {
+        // transactions of the same date share an entry, so the values are counted rather than the entries
+        return transactions.values()
+                .flatMap(transactionsForInvestment -> transactionsForInvestment.values().stream())
+                .mapToInt(List::size)
+                .sum();
+    }
+
+    @Override
+    public Footprint.Structure footprint() {
+        long records = 0;
+        long investments = 0;
+        long bytes = transactions.footprint();
+        for (NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment : transactions.values().toList()) {
+            investments++;
+            bytes += Footprint.TREE_MAP;
+            for (List<BigDecimal> values : transactionsForInvestment.values()) {
+                records += values.size();
+                bytes += Footprint.TREE_MAP_ENTRY + Footprint.LOCAL_DATE + Footprint.arrayList(values.size())
+                        + values.size() * Footprint.BIG_DECIMAL;
+            }
+        }
+        return new Footprint.Structure(Footprint.TRANSACTIONS, records, investments, bytes, 0);
+    }
+
+    private NavigableMap<LocalDate, List<BigDecimal>> transactionsFor(int investmentSymbol) {
+        return transactions.get(investmentSymbol);
+    }
+
+    private static BigDecimal sum(Map<LocalDate, List<BigDecimal>> transactionsByDate) {
+        return transactionsByDate.values()
+                .stream()
+                .flatMap(List::stream)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    static class Builder implements TransactionStore.Builder {
+
+        private final SymbolTable symbols;
+        private final ChunkedArray.Writer<NavigableMap<LocalDate, List<BigDecimal>>> transactions =
+                ChunkedArray.<NavigableMap<LocalDate, List<BigDecimal>>>empty().writer();
+
+        Builder(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        @Override
+        public void add(int investmentSymbol, LocalDate date, BigDecimal value) {
+            NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment = transactions.get(investmentSymbol);
+            if (transactionsForInvestment == null) {
+                transactionsForInvestment = new TreeMap<>();
+                transactions.set(investmentSymbol, transactionsForInvestment);
+            }
+            transactionsForInvestment.computeIfAbsent(date, k -> new ArrayList<>())
+                    .add(value);
+        }
+
+        @Override
+        public TransactionStore build() {
+            return new HeapTransactionStore(symbols, transactions.build());
+        }
+    }
+
+    /**
+     * Copy-on-write builder, only the transactions of investments with added transactions and the chunks
+     * referring to them are copied.
+     */
+    static class Appender implements TransactionStore.Builder {
+
+        private final SymbolTable symbols;
+        private final ChunkedArray.Writer<NavigableMap<LocalDate, List<BigDecimal>>> transactions;
+        private final BitSet copied = new BitSet();
+
+        Appender(SymbolTable symbols, ChunkedArray<NavigableMap<LocalDate, List<BigDecimal>>> transactions) {
+            this.symbols = symbols;
+            this.transactions = transactions.writer();
+        }
+
+        @Override
+        public void add(int investmentSymbol, LocalDate date, BigDecimal value) {
+            NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment = transactions.get(investmentSymbol);
+            if (!copied.get(investmentSymbol)) {
+                transactionsForInvestment = transactionsForInvestment == null
+                        ? new TreeMap<>() : new TreeMap<>(transactionsForInvestment);
+                transactions.set(investmentSymbol, transactionsForInvestment);
+                copied.set(investmentSymbol);
+            }
+
+            // the lists of values are shared with the original store as well
+            List<BigDecimal> values = new ArrayList<>(transactionsForInvestment.getOrDefault(date, List.of()));
+            values.add(value);
+            transactionsForInvestment.put(date, values);
+        }
+
+        @Override
+        public TransactionStore build() {
+            return new HeapTransactionStore(symbols, transactions.build());
+        }
+    }
+}
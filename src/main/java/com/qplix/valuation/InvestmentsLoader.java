@@ -1,12 +1,22 @@
 package com.qplix.valuation;
 
 import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -16,14 +26,48 @@ import org.apache.commons.csv.CSVRecord;
 @Slf4j
 public class InvestmentsLoader {
 
+    private static final long INVESTMENT_BYTES = Footprint.object(3 * 4 + Footprint.REFERENCE);
+    private static final long INVESTMENT_TREE_BYTES = Footprint.object(2 * 4 + 2 * Footprint.REFERENCE);
+    private static final long INVESTOR_TREE_BYTES = Footprint.object(4 + Footprint.REFERENCE);
+
+    private volatile SymbolTable symbols;
+
+    /**
+     * Represents raw investments read from the file indexed by investor symbol.
+     */
+    private volatile List<List<Investment>> investmentsByInvestorId = Collections.emptyList();
+    /**
+     * Represents investments tree by given investor symbol (cached for repetitive calls to optimize Funds tree hierarchy retrieval).
+     * Only complete trees are published, so the cache is read without locking.
+     */
+    private volatile AtomicReferenceArray<InvestorTree> fundInvestmentTreesByFondsInvestor =
+            new AtomicReferenceArray<>(0);
     /**
-     * Represents raw investments read from the file indexed by investorId.
+     * Weakly connected components of the fund graph with the investments they were computed from (computed on
+     * first use).
      */
-    private Map<String, List<Investment>> investmentsByInvestorId = Collections.emptyMap();
+    private volatile Components components;
+    /**
+     * Costs of valuation by investor symbol (computed on first use).
+     */
+    private volatile Map<Integer, Cost> costs = new ConcurrentHashMap<>();
+    /**
+     * Whether the fund graph reachable from an investor is free of cycles by investor symbol (computed on first use).
+     */
+    private volatile Map<Integer, Boolean> acyclic = new ConcurrentHashMap<>();
+
+    public InvestmentsLoader() {
+        this(new SymbolTable());
+    }
+
     /**
-     * Represents investments tree by given investor (cached for repetitive calls to optimize Funds tree hierarchy retrieval).
+     * Create loader sharing identifiers with other loaders.
+     *
+     * @param symbols symbol table used to encode investor IDs, investment IDs, ISINs and cities
      */
-    private Map<String, InvestorTree> fundInvestmentTreesByFondsInvestor = new HashMap<>();
+    public InvestmentsLoader(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
 
     /**
      * Load all investments into memory for easy repetitive access.
@@ -37,78 +81,547 @@ public class InvestmentsLoader {
         List<Investment> investments = loadInvestments(fileName);
 
         // index them for faster repetitive access by investor
-        investmentsByInvestorId = indexInvestments(investments);
+        List<List<Investment>> newInvestmentsByInvestorId = indexInvestments(investments);
+
+        synchronized (this) {
+            investmentsByInvestorId = newInvestmentsByInvestorId;
+
+            // clear the cached investment trees (all fund investors are already interned)
+            fundInvestmentTreesByFondsInvestor = new AtomicReferenceArray<>(symbols.size());
+            components = null;
+            costs = new ConcurrentHashMap<>();
+            acyclic = new ConcurrentHashMap<>();
+        }
+
+        log.info("Loaded {} Investments for {} investors",
+                investments.size(), newInvestmentsByInvestorId.stream().filter(Objects::nonNull).count());
+    }
+
+    /**
+     * Keep only investments of given root investors and of all funds reachable from them.
+     * <p>
+     * Used when only a subset of investors is served, the result tells which transactions and quotes need to be loaded.
+     *
+     * @param rootInvestorIds investors which are served
+     * @return investors, investments and ISINs reachable from the root investors
+     */
+    public Reachability retainReachable(Collection<String> rootInvestorIds) {
+        List<List<Investment>> currentInvestments = investmentsByInvestorId;
+        List<List<Investment>> retainedInvestments = new ArrayList<>(Collections.nCopies(currentInvestments.size(), null));
+        Reachability reachability = walk(rootInvestorIds, currentInvestments, retainedInvestments);
+
+        synchronized (this) {
+            investmentsByInvestorId = retainedInvestments;
+            fundInvestmentTreesByFondsInvestor = new AtomicReferenceArray<>(symbols.size());
+            components = null;
+            costs = new ConcurrentHashMap<>();
+            acyclic = new ConcurrentHashMap<>();
+        }
+
+        log.info("Retained investments of {} investors reachable from {} root investors",
+                reachability.investorIds().size(), rootInvestorIds.size());
+        return reachability;
+    }
+
+    /**
+     * Find investors, investments and ISINs reachable from given investors, the investments are kept.
+     *
+     * @param rootInvestorIds investors to start from
+     * @return investors, investments and ISINs reachable from the root investors
+     */
+    public Reachability reachable(Collection<String> rootInvestorIds) {
+        return walk(rootInvestorIds, investmentsByInvestorId, null);
+    }
+
+    private Reachability walk(Collection<String> rootInvestorIds, List<List<Investment>> currentInvestments,
+                              List<List<Investment>> retainedInvestments) {
+        Set<String> investorIds = new HashSet<>();
+        Set<String> investmentIds = new HashSet<>();
+        Set<String> isins = new HashSet<>();
+
+        // breadth first walk through the fund graph, each investor is visited once (funds may be shared and cyclic)
+        BitSet visited = new BitSet();
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (String rootInvestorId : rootInvestorIds) {
+            int rootSymbol = symbols.find(rootInvestorId);
+            if (rootSymbol != SymbolTable.UNKNOWN && !visited.get(rootSymbol)) {
+                visited.set(rootSymbol);
+                pending.add(rootSymbol);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int investorSymbol = pending.poll();
+            List<Investment> investorInvestments =
+                    investorSymbol < currentInvestments.size() ? currentInvestments.get(investorSymbol) : null;
+            if (investorInvestments == null) {
+                continue;
+            }
+
+            if (retainedInvestments != null) {
+                retainedInvestments.set(investorSymbol, investorInvestments);
+            }
+            investorIds.add(symbols.name(investorSymbol));
+            for (Investment ii : investorInvestments) {
+                investmentIds.add(symbols.name(ii.investmentId()));
+                if (ii.investmentType() == InvestmentType.Stock) {
+                    isins.add(symbols.name(ii.assetId()));
+                } else if (ii.investmentType() == InvestmentType.Fonds && !visited.get(ii.assetId())) {
+                    visited.set(ii.assetId());
+                    pending.add(ii.assetId());
+                }
+            }
+        }
+
+        return new Reachability(investorIds, investmentIds, isins);
+    }
+
+    /**
+     * Merge parallel stock and real estate investments (same investor, same asset) into the first one of them.
+     * <p>
+     * Transactions of the merged investments have to be loaded into the investment they were merged into
+     * (see {@link TransactionsLoader#load(String, java.util.function.Predicate, Map)}), their sum is then looked up
+     * once instead of once per investment. Values are additive, so the valuation does not change. Fund investments
+     * are kept as they are, because the share of every investment is rounded on its own (the value of the fund
+     * itself is computed once per request anyway). Investment IDs used by more than one investment are kept too.
+     *
+     * @return merged investment IDs mapped to the investment IDs they were merged into
+     */
+    public Map<String, String> compact() {
+        List<List<Investment>> currentInvestments = investmentsByInvestorId;
+
+        // only investments with unique ID own their transactions
+        Map<Integer, Integer> investmentIdCounts = new HashMap<>();
+        for (List<Investment> investorInvestments : currentInvestments) {
+            if (investorInvestments != null) {
+                for (Investment ii : investorInvestments) {
+                    investmentIdCounts.merge(ii.investmentId(), 1, Integer::sum);
+                }
+            }
+        }
 
-        // clear the cached investment trees
-        fundInvestmentTreesByFondsInvestor = new HashMap<>();
+        List<List<Investment>> compactedInvestments = new ArrayList<>(currentInvestments.size());
+        Map<String, String> mergedInvestmentIds = new HashMap<>();
+        for (List<Investment> investorInvestments : currentInvestments) {
+            if (investorInvestments == null) {
+                compactedInvestments.add(null);
+                continue;
+            }
+
+            // investment type and asset of the kept investments
+            Map<Long, Investment> keptInvestments = new HashMap<>();
+            List<Investment> compacted = new ArrayList<>(investorInvestments.size());
+            for (Investment ii : investorInvestments) {
+                Investment kept = null;
+                if (ii.investmentType() != InvestmentType.Fonds && investmentIdCounts.get(ii.investmentId()) == 1) {
+                    long asset = (long) ii.assetId() << 2 | ii.investmentType().ordinal();
+                    kept = keptInvestments.putIfAbsent(asset, ii);
+                }
+
+                if (kept == null) {
+                    compacted.add(ii);
+                } else {
+                    mergedInvestmentIds.put(symbols.name(ii.investmentId()), symbols.name(kept.investmentId()));
+                }
+            }
+            compactedInvestments.add(compacted);
+        }
+
+        synchronized (this) {
+            investmentsByInvestorId = compactedInvestments;
+            fundInvestmentTreesByFondsInvestor = new AtomicReferenceArray<>(symbols.size());
+            components = null;
+            costs = new ConcurrentHashMap<>();
+            acyclic = new ConcurrentHashMap<>();
+        }
+
+        log.info("Merged {} parallel investments", mergedInvestmentIds.size());
+        return mergedInvestmentIds;
+    }
+
+    /**
+     * Estimate memory held by the loaded investments and by the cache of fund trees, which grows with
+     * the valuated investors.
+     *
+     * @return footprint of the {@link Footprint#INVESTMENTS} and {@link Footprint#INVESTOR_TREES} structures
+     */
+    public synchronized Footprint footprint() {
+        List<List<Investment>> currentInvestments = investmentsByInvestorId;
+        long investments = 0;
+        long investors = 0;
+        long investmentBytes = Footprint.arrayList(currentInvestments.size());
+        for (List<Investment> investorInvestments : currentInvestments) {
+            if (investorInvestments != null) {
+                investors++;
+                investments += investorInvestments.size();
+                investmentBytes += Footprint.arrayList(investorInvestments.size())
+                        + investorInvestments.size() * INVESTMENT_BYTES;
+            }
+        }
+
+        // only the trees of funds are cached, the trees of investors are created per request
+        long trees = 0;
+        long treeInvestments = 0;
+        AtomicReferenceArray<InvestorTree> fundTrees = fundInvestmentTreesByFondsInvestor;
+        long treeBytes = Footprint.array(fundTrees.length(), Footprint.REFERENCE);
+        for (int fundSymbol = 0; fundSymbol < fundTrees.length(); fundSymbol++) {
+            InvestorTree tree = fundTrees.get(fundSymbol);
+            if (tree != null) {
+                trees++;
+                treeInvestments += tree.underlyings.size();
+                treeBytes += INVESTOR_TREE_BYTES + Footprint.arrayList(tree.underlyings.size())
+                        + tree.underlyings.size() * INVESTMENT_TREE_BYTES;
+            }
+        }
+
+        return Footprint.of(
+                new Footprint.Structure(Footprint.INVESTMENTS, investments, investors, investmentBytes, 0),
+                new Footprint.Structure(Footprint.INVESTOR_TREES, treeInvestments, trees, treeBytes, 0));
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * Drop the loaded data and encode the following loads with given symbol table, e.g. a fresh table per load
+     * of the {@link ValuationRunner}. Must not run concurrently with reads.
+     *
+     * @param symbols symbol table to use from now on
+     */
+    synchronized void reset(SymbolTable symbols) {
+        investmentsByInvestorId = Collections.emptyList();
+        fundInvestmentTreesByFondsInvestor = new AtomicReferenceArray<>(0);
+        components = null;
+        costs = new ConcurrentHashMap<>();
+        acyclic = new ConcurrentHashMap<>();
+        this.symbols = symbols;
+    }
+
+    /**
+     * Estimate the cost of valuation of given investor by the size of the fund graph reachable from it.
+     * <p>
+     * The walk only counts the investments, no transactions or quotes are looked up, thus it is much cheaper than
+     * the valuation itself. The result is cached until the investments change.
+     *
+     * @param investorId investor to valuate
+     * @return investors (nodes) and investments (edges) reachable from the investor
+     */
+    public Cost estimateCost(String investorId) {
+        return estimateCost(symbols.find(investorId));
+    }
+
+    /**
+     * Estimate the cost of valuation of given investor, e.g. of a fund before valuating it by a parallel task.
+     *
+     * @param investorSymbol symbol of the investor to valuate ({@link SymbolTable#UNKNOWN} if none)
+     * @return investors (nodes) and investments (edges) reachable from the investor
+     */
+    public Cost estimateCost(int investorSymbol) {
+        if (investorSymbol == SymbolTable.UNKNOWN) {
+            return new Cost(0, 0);
+        }
+        return costs.computeIfAbsent(investorSymbol, this::computeCost);
+    }
+
+    /**
+     * Tell whether no fund reachable from given investor holds itself through its underlyings. Such a fund has no
+     * value, thus its investors cannot be valuated. The result is cached until the investments change.
+     *
+     * @param investorSymbol symbol of the investor to valuate ({@link SymbolTable#UNKNOWN} if none)
+     * @return true if the fund graph reachable from the investor has no cycle
+     */
+    public boolean isAcyclic(int investorSymbol) {
+        if (investorSymbol == SymbolTable.UNKNOWN) {
+            return true;
+        }
+        return acyclic.computeIfAbsent(investorSymbol, this::computeAcyclic);
+    }
+
+    private boolean computeAcyclic(int rootSymbol) {
+        // depth first walk, reaching a fund which is still on the path closes a cycle
+        BitSet onPath = new BitSet();
+        BitSet finished = new BitSet();
+        Deque<int[]> path = new ArrayDeque<>(); // investor symbol and index of its next investment
+        onPath.set(rootSymbol);
+        path.push(new int[] {rootSymbol, 0});
+        while (!path.isEmpty()) {
+            int[] top = path.peek();
+            List<Investment> investorInvestments = investmentsOf(top[0]);
+            if (investorInvestments == null || top[1] == investorInvestments.size()) {
+                path.pop();
+                onPath.clear(top[0]);
+                finished.set(top[0]);
+                continue;
+            }
 
-        log.info("Loaded {} Investments for {} investors", investments.size(), investmentsByInvestorId.size());
+            Investment ii = investorInvestments.get(top[1]++);
+            if (ii.investmentType() == InvestmentType.Fonds && !finished.get(ii.assetId())) {
+                if (onPath.get(ii.assetId())) {
+                    return false;
+                }
+                onPath.set(ii.assetId());
+                path.push(new int[] {ii.assetId(), 0});
+            }
+        }
+        return true;
     }
 
+    private Cost computeCost(int rootSymbol) {
+        int investorCount = 0;
+        int investmentCount = 0;
+
+        // each fund is counted once, the valuation computes it once per request as well
+        BitSet visited = new BitSet();
+        Deque<Integer> pending = new ArrayDeque<>();
+        visited.set(rootSymbol);
+        pending.add(rootSymbol);
+        while (!pending.isEmpty()) {
+            List<Investment> investorInvestments = investmentsOf(pending.poll());
+            if (investorInvestments == null) {
+                continue;
+            }
+
+            investorCount++;
+            investmentCount += investorInvestments.size();
+            for (Investment ii : investorInvestments) {
+                if (ii.investmentType() == InvestmentType.Fonds && !visited.get(ii.assetId())) {
+                    visited.set(ii.assetId());
+                    pending.add(ii.assetId());
+                }
+            }
+        }
+        return new Cost(investorCount, investmentCount);
+    }
+
+    /**
+     * Get weakly connected components of the fund graph, investors from different components never share a fund.
+     *
+     * @return components ordered from the largest one (by number of investments)
+     */
+    public List<Component> getComponents() {
+        List<List<Investment>> currentInvestments = investmentsByInvestorId;
+        Components cached = components;
+        if (cached == null || cached.investments() != currentInvestments) {
+            // tagged by the investments, components computed during a load are never used for the loaded data
+            cached = new Components(currentInvestments, computeComponents(currentInvestments));
+            components = cached;
+        }
+        return cached.components();
+    }
+
+    /**
+     * Split the components into given number of partitions with similar number of investments.
+     * Partitions can be valuated independently, e.g. by separate threads or processes.
+     *
+     * @param parts number of partitions
+     * @return partitions (some may be empty if there are fewer components than partitions)
+     */
+    public List<Partition> partition(int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be positive");
+        }
+
+        // the largest components first, each to the currently smallest partition
+        List<List<Component>> assigned = new ArrayList<>();
+        int[] investmentCounts = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            assigned.add(new ArrayList<>());
+        }
+        for (Component component : getComponents()) {
+            int smallest = 0;
+            for (int i = 1; i < parts; i++) {
+                if (investmentCounts[i] < investmentCounts[smallest]) {
+                    smallest = i;
+                }
+            }
+            assigned.get(smallest).add(component);
+            investmentCounts[smallest] += component.investmentCount();
+        }
+
+        List<Partition> result = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            List<String> investorIds = new ArrayList<>();
+            List<String> rootInvestorIds = new ArrayList<>();
+            for (Component component : assigned.get(i)) {
+                investorIds.addAll(component.investorIds());
+                rootInvestorIds.addAll(component.rootInvestorIds());
+            }
+            result.add(new Partition(i, investorIds, rootInvestorIds, investmentCounts[i]));
+        }
+        return result;
+    }
+
+    private List<Component> computeComponents(List<List<Investment>> investments) {
+        // union-find over investor symbols, investor and fund it invests into belong to the same component
+        int[] parents = new int[symbols.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        BitSet heldByFund = new BitSet();
+        for (List<Investment> investorInvestments : investments) {
+            if (investorInvestments == null) {
+                continue;
+            }
+            for (Investment ii : investorInvestments) {
+                if (ii.investmentType() == InvestmentType.Fonds) {
+                    parents[find(parents, ii.investorId())] = find(parents, ii.assetId());
+                    heldByFund.set(ii.assetId());
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> investorsByRoot = new HashMap<>();
+        for (int investorSymbol = 0; investorSymbol < investments.size(); investorSymbol++) {
+            if (investments.get(investorSymbol) != null) {
+                investorsByRoot.computeIfAbsent(find(parents, investorSymbol), k -> new ArrayList<>())
+                        .add(investorSymbol);
+            }
+        }
+
+        List<Component> result = new ArrayList<>();
+        for (List<Integer> investorSymbols : investorsByRoot.values()) {
+            List<String> investorIds = new ArrayList<>();
+            List<String> rootInvestorIds = new ArrayList<>();
+            int investmentCount = 0;
+            for (int investorSymbol : investorSymbols) {
+                investorIds.add(symbols.name(investorSymbol));
+                if (!heldByFund.get(investorSymbol)) {
+                    rootInvestorIds.add(symbols.name(investorSymbol));
+                }
+                investmentCount += investments.get(investorSymbol).size();
+            }
+            result.add(new Component(investorIds, rootInvestorIds, investmentCount));
+        }
+        result.sort(Comparator.comparingInt(Component::investmentCount).reversed());
+
+        log.info("Fund graph has {} components, the largest has {} investments",
+                result.size(), result.isEmpty() ? 0 : result.get(0).investmentCount());
+        return List.copyOf(result);
+    }
+
+    private static int find(int[] parents, int symbol) {
+        while (parents[symbol] != symbol) {
+            parents[symbol] = parents[parents[symbol]]; // path halving
+            symbol = parents[symbol];
+        }
+        return symbol;
+    }
+
+    /**
+     * Get investments tree of given investor.
+     *
+     * @param investorId investor for which to get the tree
+     * @return investments tree of the investor (empty if investor has no investments)
+     */
     public InvestorTree getInvestorTree(String investorId) {
-        // filter investments by investorId and index by investmentId
-        InvestorTree result = new InvestorTree(investorId, new ArrayList<>());
-        filterInvestments(investorId, result, fundInvestmentTreesByFondsInvestor);
+        return getInvestorTree(symbols.find(investorId));
+    }
 
+    /**
+     * Get investments tree of given investor, the identifiers in the tree are symbols of the shared
+     * {@link SymbolTable}.
+     * <p>
+     * Trees of funds are cached, so the tree is assembled without locking once the funds reachable from the investor
+     * were seen. Once the tree is returned it is never modified.
+     *
+     * @param investorSymbol symbol of the investor for which to get the tree ({@link SymbolTable#UNKNOWN} if none)
+     * @return investments tree of the investor (empty if investor has no investments)
+     */
+    public InvestorTree getInvestorTree(int investorSymbol) {
+        AtomicReferenceArray<InvestorTree> fundTrees = fundInvestmentTreesByFondsInvestor;
+        if (investorSymbol >= 0 && investorSymbol < fundTrees.length()) {
+            InvestorTree cached = fundTrees.get(investorSymbol);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // filter investments by investor and index by investment
+        InvestorTree result = new InvestorTree(investorSymbol, new ArrayList<>());
+        filterInvestments(investorSymbol, result, fundSymbol -> {
+            InvestorTree fundTree = fundTrees.get(fundSymbol);
+            return fundTree != null ? fundTree : buildFundTree(fundSymbol);
+        });
+
+        return result;
+    }
+
+    /**
+     * Build trees of given fund and of all funds reachable from it which are not cached yet, the trees are
+     * published once all of them are complete.
+     */
+    private synchronized InvestorTree buildFundTree(int fundSymbol) {
+        AtomicReferenceArray<InvestorTree> fundTrees = fundInvestmentTreesByFondsInvestor;
+        Map<Integer, InvestorTree> builtTrees = new HashMap<>();
+        InvestorTree result = fundTree(fundSymbol, fundTrees, builtTrees);
+        builtTrees.forEach(fundTrees::set);
         return result;
     }
 
-    private void filterInvestments(
-            String investorId, InvestorTree target, Map<String, InvestorTree> fundInvestmentTreesByFondsInvestor) {
-        List<Investment> requiredInvestorInvestments = investmentsByInvestorId.get(investorId);
+    private InvestorTree fundTree(
+            int fundSymbol, AtomicReferenceArray<InvestorTree> fundTrees, Map<Integer, InvestorTree> builtTrees) {
+        // find existing investments of given investor
+        InvestorTree tree = fundTrees.get(fundSymbol);
+        if (tree == null) {
+            tree = builtTrees.get(fundSymbol);
+        }
+        if (tree == null) {
+            // registered before its investments are added, so the investors are properly cycled via shared collections
+            tree = new InvestorTree(fundSymbol, new ArrayList<>());
+            builtTrees.put(fundSymbol, tree);
+            filterInvestments(fundSymbol, tree, childSymbol -> fundTree(childSymbol, fundTrees, builtTrees));
+        }
+        return tree;
+    }
+
+    private void filterInvestments(int investorSymbol, InvestorTree target, IntFunction<InvestorTree> fundTrees) {
+        List<Investment> requiredInvestorInvestments = investmentsOf(investorSymbol);
         if (requiredInvestorInvestments == null) {
             return; // no investments for this investor exist
         }
 
         for (Investment ii : requiredInvestorInvestments) {
             if (ii.investmentType() == InvestmentType.Fonds) {
-                addFund(target, fundInvestmentTreesByFondsInvestor, ii);
+                addFund(target, fundTrees.apply(ii.assetId()), ii);
             } else {
                 addNonFund(target, ii);
             }
         }
     }
 
-    private void addFund(InvestorTree target, Map<String, InvestorTree> fundInvestmentTreesByFondsInvestor, Investment ii) {
-        // find existing investments of given investor
-        InvestorTree childTarget;
-        boolean isNew;
-        InvestorTree childTargetTemp = fundInvestmentTreesByFondsInvestor.get(ii.getAssetId());
-        if (childTargetTemp == null) {
-            isNew = true;
-            childTarget = new InvestorTree(ii.getAssetId(), new ArrayList<>());
-            fundInvestmentTreesByFondsInvestor.put(ii.getAssetId(), childTarget);
-        } else {
-            isNew = false;
-            childTarget = childTargetTemp;
-        }
-
-        // add the investment to the result and ensure the investors are properly cycled via shared collections
+    private void addFund(InvestorTree target, InvestorTree fundTree, Investment ii) {
+        // the investment shares the underlyings of the fund tree
         target.underlyings.add(
-                new InvestmentTree(
-                        ii.investmentId, ii.investmentType, ii.getAssetId(), childTarget.underlyings));
-
-        // now recursively go through all fonds investments and add their investments if we have not yet done it
-        if (isNew) {
-            filterInvestments(ii.fondsInvestor(), childTarget, fundInvestmentTreesByFondsInvestor);
-        }
+                new InvestmentTree(ii.investmentId(), ii.investmentType(), ii.assetId(), fundTree.underlyings));
     }
 
     private void addNonFund(InvestorTree target, Investment ii) {
         // stocks and real estates have no underlyings
         target.underlyings.add(
-                new InvestmentTree(
-                        ii.investmentId, ii.investmentType(), ii.getAssetId(), Collections.emptyList()));
+                new InvestmentTree(ii.investmentId(), ii.investmentType(), ii.assetId(), Collections.emptyList()));
+    }
+
+    private List<Investment> investmentsOf(int investorSymbol) {
+        List<List<Investment>> currentInvestments = investmentsByInvestorId;
+        if (investorSymbol < 0 || investorSymbol >= currentInvestments.size()) {
+            return null;
+        }
+        return currentInvestments.get(investorSymbol);
     }
 
-    private static Map<String, List<Investment>> indexInvestments(List<Investment> investments) {
-        // index investments by investorId and investmentId
-        Map<String, List<Investment>> indexedInvestorInvestments = new HashMap<>();
+    private static List<List<Investment>> indexInvestments(List<Investment> investments) {
+        // index investments by investor symbol
+        List<List<Investment>> indexedInvestorInvestments = new ArrayList<>();
         for (Investment ii : investments) {
-            indexedInvestorInvestments.computeIfAbsent(
-                            ii.investorId,
-                            k -> new ArrayList<>())
-                    .add(ii);
+            while (indexedInvestorInvestments.size() <= ii.investorId()) {
+                indexedInvestorInvestments.add(null);
+            }
+            List<Investment> investorInvestments = indexedInvestorInvestments.get(ii.investorId());
+            if (investorInvestments == null) {
+                investorInvestments = new ArrayList<>();
+                indexedInvestorInvestments.set(ii.investorId(), investorInvestments);
+            }
+            investorInvestments.add(ii);
         }
 
         return indexedInvestorInvestments;
@@ -135,13 +648,17 @@ public class InvestmentsLoader {
                 String fondsInvestor = csvRecord.get("FondsInvestor");
                 validateInvestment(isin, city, fondsInvestor, investmentType);
 
+                String assetId = switch (investmentType) {
+                    case Stock -> isin;
+                    case RealEstate -> city;
+                    case Fonds -> fondsInvestor;
+                };
+
                 investments.add(new Investment(
-                        investorId,
-                        investmentId,
+                        symbols.intern(investorId),
+                        symbols.intern(investmentId),
                         investmentType,
-                        isin,
-                        city,
-                        fondsInvestor));
+                        symbols.intern(assetId)));
             }
         } catch (Exception e) {
             throw new IllegalArgumentException("Unable to load investments from file " + fileName, e);
@@ -165,26 +682,26 @@ public class InvestmentsLoader {
     }
 
     /**
-     * Represents investment tree hierarchy.
+     * Represents investment tree hierarchy, identifiers are symbols of the shared {@link SymbolTable}.
      */
     @AllArgsConstructor
     public static final class InvestmentTree {
 
         /**
-         * The identifier of the investment
+         * The symbol of the investment
          */
         @Getter
-        private final String investmentId;
+        private final int investmentSymbol;
         /**
          * The type of investment
          */
         @Getter
         private final InvestmentType investmentType;
         /**
-         * The identifier of the asset (fund ID, stock ID, real estate ID)
+         * The symbol of the asset (fund ID, stock ID, real estate ID)
          */
         @Getter
-        private final String assetId;
+        private final int assetSymbol;
 
         private final List<InvestmentTree> underlyings;
 
@@ -199,22 +716,22 @@ public class InvestmentsLoader {
 
         @Override
         public String toString() {
-            return "Investments into " + assetId;
+            return "Investments into " + assetSymbol;
         }
 
     }
 
     /**
-     * Represents investment tree hierarchy by investor.
+     * Represents investment tree hierarchy by investor, identifiers are symbols of the shared {@link SymbolTable}.
      */
     @AllArgsConstructor
     public static final class InvestorTree {
 
         /**
-         * The identifier of the investor
+         * The symbol of the investor
          */
         @Getter
-        private final String investorId;
+        private final int investorSymbol;
 
         private final List<InvestmentTree> underlyings;
 
@@ -227,30 +744,67 @@ public class InvestmentsLoader {
 
         @Override
         public String toString() {
-            return "Investments of investor " + investorId;
+            return "Investments of investor " + investorSymbol;
         }
     }
 
     /**
-     * Represents raw investment from CSV file.
+     * Represents raw investment from CSV file, identifiers are symbols of the shared {@link SymbolTable}.
      *
      * @param investorId     Investor ID (either an investor or a fond investor).
      * @param investmentId   Investment ID (identifier of an operation that can be done multiple times).
      * @param investmentType Investment type (Fonds, Stock, RealEstate).
-     * @param isin           ISIN of security bought (if investment is into {@link InvestmentType#Stock}).
-     * @param city           City of estate bought (if investment is into {@link InvestmentType#RealEstate}).
-     * @param fondsInvestor  Investor ID of fund bought (if investment is into {@link InvestmentType#Fonds}).
+     * @param assetId        ISIN of security bought (if investment is into {@link InvestmentType#Stock}),
+     *                       city of estate bought (if investment is into {@link InvestmentType#RealEstate})
+     *                       or investor ID of fund bought (if investment is into {@link InvestmentType#Fonds}).
      */
-    public record Investment(String investorId, String investmentId, InvestmentType investmentType,
-                             String isin, String city, String fondsInvestor) {
+    public record Investment(int investorId, int investmentId, InvestmentType investmentType, int assetId) {
+    }
 
-        public String getAssetId() {
-            return switch (investmentType) {
-                case Stock -> isin;
-                case RealEstate -> city;
-                case Fonds -> fondsInvestor;
-            };
-        }
+    /**
+     * Weakly connected component of the fund graph.
+     *
+     * @param investorIds     investors and funds having investments in the component
+     * @param rootInvestorIds investors of the component which are not held by any fund
+     * @param investmentCount number of investments in the component
+     */
+    public record Component(List<String> investorIds, List<String> rootInvestorIds, int investmentCount) {
+    }
+
+    /**
+     * Components computed from given investments.
+     */
+    private record Components(List<List<Investment>> investments, List<Component> components) {
+    }
+
+    /**
+     * Group of components valuated together.
+     *
+     * @param index           index of the partition
+     * @param investorIds     investors and funds having investments in the partition
+     * @param rootInvestorIds investors of the partition which are not held by any fund
+     * @param investmentCount number of investments in the partition
+     */
+    public record Partition(int index, List<String> investorIds, List<String> rootInvestorIds, int investmentCount) {
+    }
+
+    /**
+     * Estimated cost of valuation of an investor.
+     *
+     * @param investorCount   investors and funds reachable from the investor (including the investor)
+     * @param investmentCount investments reachable from the investor
+     */
+    public record Cost(int investorCount, int investmentCount) {
+    }
+
+    /**
+     * Identifiers reachable from a set of investors through the fund graph.
+     *
+     * @param investorIds   investors and funds having reachable investments
+     * @param investmentIds reachable investments (keys of the transactions)
+     * @param isins         ISINs of reachable stocks (keys of the quotes)
+     */
+    public record Reachability(Set<String> investorIds, Set<String> investmentIds, Set<String> isins) {
     }
 
     /**
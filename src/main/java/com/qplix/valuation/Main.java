@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,8 +14,30 @@ public class Main {
 
     public static void main(String[] args) throws IOException {
         ValuationRunner runner = new ValuationRunner();
+
+        if (args.length > 1 && "worker".equals(args[0])) {
+            // worker mode: 'worker shardDirectory [port]', started by ValuationCoordinator
+            runner.load(Path.of(args[1]));
+            ValuationWorker worker = new ValuationWorker(runner, args.length > 2 ? Integer.parseInt(args[2]) : 0);
+            Runtime.getRuntime().addShutdownHook(new Thread(worker::close));
+            worker.start();
+            System.out.printf("%s %d%n", ValuationWorker.READY, worker.getPort());
+            System.out.flush();
+            return;
+        }
+
         runner.load();
 
+        if (args.length > 0 && "server".equals(args[0])) {
+            // server mode: 'server [port] [maxInFlight]', runs until the process is killed
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+            ValuationServer server = new ValuationServer(runner, new InetSocketAddress(port), maxInFlight);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            return;
+        }
+
         System.out.printf("Type 'investorId;date' or press enter to exit%n");
 
         BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in));
@@ -0,0 +1,483 @@
+package com.qplix.valuation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transactions held outside of the heap in a columnar layout.
+ * <p>
+ * Transactions of every investment form one contiguous run sorted by date, each entry holds the epoch day,
+ * the amount and the cumulative sum of the run up to and including the entry. Runs are located by an int offset
+ * table indexed by investment symbol, so the value as of a date is a binary search over the run, without summing.
+ * <p>
+ * The entries live either in direct buffers or in a memory mapped file, in both cases the heap holds only
+ * the offset table, and {@link #close()} releases them right away. Amounts are stored as unscaled long and scale,
+ * which keeps the results identical to the {@link BigDecimal} sums of {@link HeapTransactionStore}.
+ */
+@Slf4j
+class OffHeapTransactionStore implements TransactionStore {
+
+    // entry layout: int epochDay, short amountScale, short cumulativeScale, long amountUnscaled, long cumulativeUnscaled
+    static final int ENTRY_BYTES = 24;
+    private static final int DAY_OFFSET = 0;
+    private static final int AMOUNT_SCALE_OFFSET = 4;
+    private static final int CUMULATIVE_SCALE_OFFSET = 6;
+    private static final int AMOUNT_OFFSET = 8;
+    private static final int CUMULATIVE_OFFSET = 16;
+
+    /**
+     * Entries are split into chunks, because a single buffer cannot exceed 2GB.
+     */
+    private static final int CHUNK_SHIFT = 22;
+    private static final int CHUNK_ENTRIES = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ENTRIES - 1;
+
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+    private static final int CLOSED = 1 << 30;
+
+    /**
+     * First entry of the run of given investment symbol, the run ends where the run of the next symbol starts.
+     */
+    private final int[] offsets;
+    private final ByteBuffer[] chunks;
+    private final SymbolTable symbols;
+    /**
+     * Number of reads in progress and the {@code CLOSED} flag, the buffers are released once both the store
+     * is closed and no read is in progress.
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    private OffHeapTransactionStore(SymbolTable symbols, int[] offsets, ByteBuffer[] chunks) {
+        this.symbols = symbols;
+        this.offsets = offsets;
+        this.chunks = chunks;
+    }
+
+    @Override
+    public BigDecimal getValue(String investmentId, LocalDate date) {
+        return getValue(symbols.find(investmentId), date);
+    }
+
+    @Override
+    public BigDecimal getValue(int investmentSymbol, LocalDate date) {
+        if (investmentSymbol < 0 || investmentSymbol >= offsets.length - 1) {
+            return null;
+        }
+        acquire();
+        try {
+            return readValue(investmentSymbol, date);
+        } finally {
+            releaseRead();
+        }
+    }
+
+    private BigDecimal readValue(int investmentSymbol, LocalDate date) {
+        int from = offsets[investmentSymbol];
+        int to = offsets[investmentSymbol + 1];
+        if (from == to) {
+            return null;
+        }
+
+        // find first entry on or after 'date', the value is the cumulative sum of the entry before it
+        long day = date.toEpochDay();
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunk(middle).getInt(position(middle) + DAY_OFFSET) < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == from) {
+            return BigDecimal.ZERO;
+        }
+
+        int last = low - 1;
+        ByteBuffer chunk = chunk(last);
+        int position = position(last);
+        return BigDecimal.valueOf(
+                chunk.getLong(position + CUMULATIVE_OFFSET), chunk.getShort(position + CUMULATIVE_SCALE_OFFSET));
+    }
+
+    @Override
+    public int size() {
+        return offsets[offsets.length - 1];
+    }
+
+    @Override
+    public Footprint.Structure footprint() {
+        int investments = 0;
+        for (int s = 0; s < offsets.length - 1; s++) {
+            if (offsets[s] < offsets[s + 1]) {
+                investments++;
+            }
+        }
+        // the buffer objects themselves are negligible next to the offset table
+        return new Footprint.Structure(Footprint.TRANSACTIONS, size(), investments,
+                Footprint.array(offsets.length, 4) + Footprint.array(chunks.length, Footprint.REFERENCE),
+                (long) size() * ENTRY_BYTES);
+    }
+
+    /**
+     * Free the direct buffers or unmap the file once the reads in progress are finished, later reads fail with
+     * {@link IllegalStateException}. The mapped file itself is kept.
+     */
+    @Override
+    public void close() {
+        int previous = state.getAndUpdate(current -> current | CLOSED);
+        if (previous == 0) {
+            release(chunks);
+        }
+    }
+
+    private void acquire() {
+        int current;
+        do {
+            current = state.get();
+            if ((current & CLOSED) != 0) {
+                throw new IllegalStateException("Off-heap transactions have been released");
+            }
+        } while (!state.compareAndSet(current, current + 1));
+    }
+
+    private void releaseRead() {
+        // the last read after close releases the buffers
+        if (state.decrementAndGet() == CLOSED) {
+            release(chunks);
+        }
+    }
+
+    private ByteBuffer chunk(int entry) {
+        return chunk(chunks, entry);
+    }
+
+    private static ByteBuffer chunk(ByteBuffer[] chunks, int entry) {
+        return chunks[entry >>> CHUNK_SHIFT];
+    }
+
+    private static int position(int entry) {
+        return (entry & CHUNK_MASK) * ENTRY_BYTES;
+    }
+
+    private static ByteBuffer buffer(FileChannel channel, long offset, int bytes) throws IOException {
+        ByteBuffer buffer = channel == null
+                ? ByteBuffer.allocateDirect(bytes)
+                : channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Free direct buffers and unmap mapped ones without waiting for the garbage collector, which hardly notices
+     * the small buffer objects on heap.
+     */
+    private static void release(ByteBuffer[] buffers) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                try {
+                    INVOKE_CLEANER.invokeExact(buffer);
+                } catch (Throwable e) {
+                    log.warn("Unable to release off-heap transactions", e);
+                }
+            }
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Off-heap transactions are released by the garbage collector only", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stages transactions in the same kind of memory as the store (direct buffers or a temporary file next to
+     * the mapped file) and lays them out on {@link #build()}, the heap holds only the offset table.
+     */
+    static class Builder implements TransactionStore.Builder {
+
+        // staged row layout: int symbol, int epochDay, long amountUnscaled, short amountScale
+        private static final int ROW_BYTES = 18;
+        private static final int ROW_SYMBOL_OFFSET = 0;
+        private static final int ROW_DAY_OFFSET = 4;
+        private static final int ROW_AMOUNT_OFFSET = 8;
+        private static final int ROW_SCALE_OFFSET = 16;
+        private static final int STAGING_SHIFT = 16;
+        private static final int STAGING_ROWS = 1 << STAGING_SHIFT;
+        private static final int STAGING_MASK = STAGING_ROWS - 1;
+
+        private final SymbolTable symbolTable;
+        private final Path mappedFile;
+
+        private final List<ByteBuffer> staged = new ArrayList<>();
+        private FileChannel stagingChannel;
+        private long count;
+        private int maxSymbol = -1;
+
+        /**
+         * @param symbols    symbol table encoding the investments
+         * @param mappedFile file to map the entries to or null to keep them in direct memory
+         */
+        Builder(SymbolTable symbols, Path mappedFile) {
+            this.symbolTable = symbols;
+            this.mappedFile = mappedFile;
+        }
+
+        @Override
+        public void add(int investmentSymbol, LocalDate date, BigDecimal value) {
+            // entries are addressed by the int offset table
+            if (count == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap storage is limited to " + Integer.MAX_VALUE
+                        + " transactions");
+            }
+            int stagingChunk = (int) (count >>> STAGING_SHIFT);
+            if (stagingChunk == staged.size()) {
+                staged.add(stage(stagingChunk));
+            }
+            ByteBuffer buffer = staged.get(stagingChunk);
+            int position = (int) (count & STAGING_MASK) * ROW_BYTES;
+            buffer.putInt(position + ROW_SYMBOL_OFFSET, investmentSymbol);
+            buffer.putInt(position + ROW_DAY_OFFSET, Math.toIntExact(date.toEpochDay()));
+            buffer.putLong(position + ROW_AMOUNT_OFFSET, unscaled(value));
+            buffer.putShort(position + ROW_SCALE_OFFSET, scale(value));
+            count++;
+            maxSymbol = Math.max(maxSymbol, investmentSymbol);
+        }
+
+        @Override
+        public TransactionStore build() {
+            try {
+                int entries = (int) count;
+
+                // counting sort by symbol keeps the file order within an investment
+                int[] offsets = new int[maxSymbol + 2];
+                for (int row = 0; row < entries; row++) {
+                    offsets[stagedRow(row).getInt(stagedPosition(row) + ROW_SYMBOL_OFFSET) + 1]++;
+                }
+                for (int s = 0; s <= maxSymbol; s++) {
+                    offsets[s + 1] += offsets[s];
+                }
+
+                ByteBuffer[] chunks = allocate(entries);
+                try {
+                    int[] cursors = Arrays.copyOf(offsets, offsets.length);
+                    for (int row = 0; row < entries; row++) {
+                        ByteBuffer buffer = stagedRow(row);
+                        int rowPosition = stagedPosition(row);
+                        int entry = cursors[buffer.getInt(rowPosition + ROW_SYMBOL_OFFSET)]++;
+                        ByteBuffer chunk = chunks[entry >>> CHUNK_SHIFT];
+                        int position = position(entry);
+                        chunk.putInt(position + DAY_OFFSET, buffer.getInt(rowPosition + ROW_DAY_OFFSET));
+                        chunk.putShort(position + AMOUNT_SCALE_OFFSET, buffer.getShort(rowPosition + ROW_SCALE_OFFSET));
+                        chunk.putLong(position + AMOUNT_OFFSET, buffer.getLong(rowPosition + ROW_AMOUNT_OFFSET));
+                    }
+                    for (int s = 0; s <= maxSymbol; s++) {
+                        sortAndSumRun(chunks, offsets[s], offsets[s + 1]);
+                    }
+                } catch (RuntimeException e) {
+                    release(chunks);
+                    throw e;
+                }
+
+                return new OffHeapTransactionStore(symbolTable, offsets, chunks);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Release the staged transactions, the built store is not affected.
+         */
+        @Override
+        public void close() {
+            release(staged.toArray(ByteBuffer[]::new));
+            staged.clear();
+            if (stagingChannel != null) {
+                try {
+                    stagingChannel.close();
+                } catch (IOException e) {
+                    log.warn("Unable to delete staged transactions of {}", mappedFile, e);
+                }
+                stagingChannel = null;
+            }
+        }
+
+        private ByteBuffer stagedRow(int row) {
+            return staged.get(row >>> STAGING_SHIFT);
+        }
+
+        private static int stagedPosition(int row) {
+            return (row & STAGING_MASK) * ROW_BYTES;
+        }
+
+        private ByteBuffer stage(int stagingChunk) {
+            try {
+                if (mappedFile != null && stagingChannel == null) {
+                    Path directory = mappedFile.toAbsolutePath().getParent();
+                    Path stagingFile = Files.createTempFile(directory, mappedFile.getFileName().toString(), ".staging");
+                    stagingChannel = FileChannel.open(stagingFile, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                return buffer(stagingChannel, (long) stagingChunk * STAGING_ROWS * ROW_BYTES, STAGING_ROWS * ROW_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to stage transactions next to " + mappedFile, e);
+            }
+        }
+
+        /**
+         * Sort the entries of a run by day in place and fill in the cumulative sums, transactions of the same day
+         * keep their file order. Nothing is allocated on heap, a run may hold millions of entries.
+         */
+        private static void sortAndSumRun(ByteBuffer[] chunks, int from, int to) {
+            // the cumulative slot holds the file order until the sums are filled in, which makes the heap sort stable
+            boolean sorted = true;
+            for (int entry = from; entry < to; entry++) {
+                chunk(chunks, entry).putLong(position(entry) + CUMULATIVE_OFFSET, entry);
+                sorted &= entry == from || compare(chunks, entry - 1, entry) <= 0;
+            }
+            if (!sorted) {
+                heapSort(chunks, from, to);
+            }
+
+            BigDecimal cumulative = BigDecimal.ZERO;
+            for (int entry = from; entry < to; entry++) {
+                ByteBuffer chunk = chunk(chunks, entry);
+                int position = position(entry);
+                cumulative = cumulative.add(BigDecimal.valueOf(
+                        chunk.getLong(position + AMOUNT_OFFSET), chunk.getShort(position + AMOUNT_SCALE_OFFSET)));
+                chunk.putShort(position + CUMULATIVE_SCALE_OFFSET, scale(cumulative));
+                chunk.putLong(position + CUMULATIVE_OFFSET, unscaled(cumulative));
+            }
+        }
+
+        private static void heapSort(ByteBuffer[] chunks, int from, int to) {
+            int length = to - from;
+            for (int i = length / 2 - 1; i >= 0; i--) {
+                siftDown(chunks, from, i, length);
+            }
+            for (int end = length - 1; end > 0; end--) {
+                swap(chunks, from, from + end);
+                siftDown(chunks, from, 0, end);
+            }
+        }
+
+        private static void siftDown(ByteBuffer[] chunks, int from, int root, int length) {
+            while (2 * root + 1 < length) {
+                int child = 2 * root + 1;
+                if (child + 1 < length && compare(chunks, from + child, from + child + 1) < 0) {
+                    child++;
+                }
+                if (compare(chunks, from + root, from + child) >= 0) {
+                    return;
+                }
+                swap(chunks, from + root, from + child);
+                root = child;
+            }
+        }
+
+        /**
+         * Compare entries by day and file order (held in the cumulative slot while sorting).
+         */
+        private static int compare(ByteBuffer[] chunks, int first, int second) {
+            ByteBuffer firstChunk = chunk(chunks, first);
+            ByteBuffer secondChunk = chunk(chunks, second);
+            int result = Integer.compare(firstChunk.getInt(position(first) + DAY_OFFSET),
+                    secondChunk.getInt(position(second) + DAY_OFFSET));
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(firstChunk.getLong(position(first) + CUMULATIVE_OFFSET),
+                    secondChunk.getLong(position(second) + CUMULATIVE_OFFSET));
+        }
+
+        private static void swap(ByteBuffer[] chunks, int first, int second) {
+            ByteBuffer firstChunk = chunk(chunks, first);
+            ByteBuffer secondChunk = chunk(chunks, second);
+            int firstPosition = position(first);
+            int secondPosition = position(second);
+            int day = firstChunk.getInt(firstPosition + DAY_OFFSET);
+            short scale = firstChunk.getShort(firstPosition + AMOUNT_SCALE_OFFSET);
+            long amount = firstChunk.getLong(firstPosition + AMOUNT_OFFSET);
+            long order = firstChunk.getLong(firstPosition + CUMULATIVE_OFFSET);
+            firstChunk.putInt(firstPosition + DAY_OFFSET, secondChunk.getInt(secondPosition + DAY_OFFSET));
+            firstChunk.putShort(firstPosition + AMOUNT_SCALE_OFFSET,
+                    secondChunk.getShort(secondPosition + AMOUNT_SCALE_OFFSET));
+            firstChunk.putLong(firstPosition + AMOUNT_OFFSET, secondChunk.getLong(secondPosition + AMOUNT_OFFSET));
+            firstChunk.putLong(firstPosition + CUMULATIVE_OFFSET,
+                    secondChunk.getLong(secondPosition + CUMULATIVE_OFFSET));
+            secondChunk.putInt(secondPosition + DAY_OFFSET, day);
+            secondChunk.putShort(secondPosition + AMOUNT_SCALE_OFFSET, scale);
+            secondChunk.putLong(secondPosition + AMOUNT_OFFSET, amount);
+            secondChunk.putLong(secondPosition + CUMULATIVE_OFFSET, order);
+        }
+
+        private ByteBuffer[] allocate(int entries) {
+            ByteBuffer[] chunks = new ByteBuffer[(int) (((long) entries + CHUNK_ENTRIES - 1) >>> CHUNK_SHIFT)];
+            if (mappedFile == null) {
+                for (int c = 0; c < chunks.length; c++) {
+                    chunks[c] = ByteBuffer.allocateDirect(chunkBytes(entries, c)).order(ByteOrder.nativeOrder());
+                }
+                return chunks;
+            }
+
+            // the mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(mappedFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (int c = 0; c < chunks.length; c++) {
+                    chunks[c] = buffer(channel, (long) c * CHUNK_ENTRIES * ENTRY_BYTES, chunkBytes(entries, c));
+                }
+            } catch (IOException e) {
+                release(chunks);
+                throw new UncheckedIOException("Unable to map transactions to file " + mappedFile, e);
+            }
+            return chunks;
+        }
+
+        private static int chunkBytes(int entries, int chunk) {
+            return (int) Math.min(CHUNK_ENTRIES, entries - (long) chunk * CHUNK_ENTRIES) * ENTRY_BYTES;
+        }
+
+        private static long unscaled(BigDecimal value) {
+            try {
+                return value.unscaledValue().longValueExact();
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Transaction value " + value + " is out of range for off-heap storage", e);
+            }
+        }
+
+        private static short scale(BigDecimal value) {
+            if (value.scale() < Short.MIN_VALUE || value.scale() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Transaction value " + value + " is out of range for off-heap storage");
+            }
+            return (short) value.scale();
+        }
+    }
+}
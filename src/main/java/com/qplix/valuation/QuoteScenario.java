@@ -0,0 +1,49 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Quote scenario used to revalue investors under shocked prices.
+ *
+ * @param name        name of the scenario (e.g. "Tech -10%")
+ * @param overrides   quotes replacing the loaded ones by ISIN (applied even if there is no loaded quote)
+ * @param multipliers multipliers of the loaded quotes by ISIN (e.g. 0.9 for -10%), ignored if ISIN is overridden
+ */
+public record QuoteScenario(String name, Map<String, BigDecimal> overrides, Map<String, BigDecimal> multipliers) {
+
+    public QuoteScenario {
+        overrides = Map.copyOf(overrides);
+        multipliers = Map.copyOf(multipliers);
+    }
+
+    /**
+     * Scenario multiplying quotes of given ISINs.
+     *
+     * @param name        name of the scenario
+     * @param multipliers multipliers of the loaded quotes by ISIN
+     * @return the scenario
+     */
+    public static QuoteScenario ofMultipliers(String name, Map<String, BigDecimal> multipliers) {
+        return new QuoteScenario(name, Map.of(), multipliers);
+    }
+
+    /**
+     * Apply the scenario to a quote.
+     *
+     * @param isin      ISIN of the quote
+     * @param baseQuote loaded quote or null if not present
+     * @return quote in this scenario or null if not present
+     */
+    public BigDecimal apply(String isin, BigDecimal baseQuote) {
+        BigDecimal override = overrides.get(isin);
+        if (override != null) {
+            return override;
+        }
+        BigDecimal multiplier = multipliers.get(isin);
+        if (baseQuote == null || multiplier == null) {
+            return baseQuote;
+        }
+        return baseQuote.multiply(multiplier);
+    }
+}
@@ -3,11 +3,12 @@ package com.qplix.valuation;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.function.Predicate;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -18,10 +19,25 @@ import org.apache.commons.csv.CSVRecord;
 @Slf4j
 public class QuotesLoader {
 
+    private volatile SymbolTable symbols;
+
     /**
-     * Quote values indexed by ISIN
+     * Quote values indexed by ISIN symbol (null for symbols which are not ISINs with quotes)
      */
-    private Map<String, NavigableMap<LocalDate, BigDecimal>> quotes = Collections.emptyMap();
+    private volatile ChunkedArray<NavigableMap<LocalDate, BigDecimal>> quotes = ChunkedArray.empty();
+
+    public QuotesLoader() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * Create loader sharing identifiers with other loaders.
+     *
+     * @param symbols symbol table used to encode ISINs
+     */
+    public QuotesLoader(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
 
     /**
      * Load quotes from CSV file for given date.
@@ -29,15 +45,29 @@ public class QuotesLoader {
      * @param fileName name of the file to load
      */
     public void load(String fileName) {
+        load(fileName, isin -> true);
+    }
+
+    /**
+     * Load only quotes of given ISINs from CSV file.
+     *
+     * @param fileName   name of the file to load
+     * @param isinFilter ISINs to keep, other rows are skipped without being parsed
+     */
+    public void load(String fileName, Predicate<String> isinFilter) {
         log.info("Loading quotes...");
 
-        Map<String, NavigableMap<LocalDate, BigDecimal>> newQuotes = new HashMap<>();
+        ChunkedArray.Writer<NavigableMap<LocalDate, BigDecimal>> newQuotes =
+                ChunkedArray.<NavigableMap<LocalDate, BigDecimal>>empty().writer();
 
         try (Reader reader = ResourceReaderFactory.resourceFileReader(fileName);
              CSVParser csvParser = ResourceReaderFactory.csvParser(reader)) {
             for (CSVRecord csvRecord : csvParser) {
                 String isin = csvRecord.get("ISIN");
                 validateStringValue(isin, "Missing ISIN for quote");
+                if (!isinFilter.test(isin)) {
+                    continue;
+                }
 
                 String dateString = csvRecord.get("Date");
                 validateStringValue(dateString, "Missing date for quote");
@@ -47,15 +77,41 @@ public class QuotesLoader {
                 validateStringValue(pricePerShareString, "Missing price per share for quote");
                 BigDecimal pricePerShare = new BigDecimal(pricePerShareString);
 
-                addQuote(isin, date, pricePerShare, newQuotes);
+                addQuote(symbols.intern(isin), date, pricePerShare, newQuotes);
             }
         } catch (Exception e) {
             throw new IllegalArgumentException("Unable to load quotes from file " + fileName, e);
         }
 
-        quotes = newQuotes;
+        synchronized (this) {
+            quotes = newQuotes.build();
+        }
 
-        log.info("Loaded {} quotes", newQuotes.size());
+        log.info("Loaded {} quotes", size());
+    }
+
+    /**
+     * Append quotes to the loaded ones, a quote of the same ISIN and date replaces the loaded one.
+     * <p>
+     * The loaded quotes are not modified, a copy sharing all untouched ISINs (and chunks of ISINs) replaces them
+     * at once, so concurrent valuations see either none or all of the appended quotes.
+     *
+     * @param newQuotes quotes to append
+     */
+    public synchronized void append(List<Quote> newQuotes) {
+        ChunkedArray.Writer<NavigableMap<LocalDate, BigDecimal>> appendedQuotes = quotes.writer();
+        BitSet copied = new BitSet();
+        for (Quote quote : newQuotes) {
+            int isinSymbol = symbols.intern(quote.isin());
+            if (appendedQuotes.get(isinSymbol) != null && !copied.get(isinSymbol)) {
+                appendedQuotes.set(isinSymbol, new TreeMap<>(appendedQuotes.get(isinSymbol)));
+            }
+            copied.set(isinSymbol);
+            addQuote(isinSymbol, quote.date(), quote.pricePerShare(), appendedQuotes);
+        }
+        quotes = appendedQuotes.build();
+
+        log.debug("Appended {} quotes", newQuotes.size());
     }
 
     /**
@@ -66,7 +122,22 @@ public class QuotesLoader {
      * @return value for given ISIN and date or null if not present
      */
     public BigDecimal getQuote(String isin, LocalDate date) {
-        NavigableMap<LocalDate, BigDecimal> quotesForIsin = quotes.get(isin);
+        return getQuote(symbols.find(isin), isin, date);
+    }
+
+    /**
+     * Get value for given ISIN and date, used by the valuation to avoid lookups of the ISINs.
+     *
+     * @param isinSymbol symbol of the ISIN in the symbol table of the loader
+     * @param date       date for which to get value
+     * @return value for given ISIN and date or null if not present
+     */
+    public BigDecimal getQuote(int isinSymbol, LocalDate date) {
+        return getQuote(isinSymbol, symbols.name(isinSymbol), date);
+    }
+
+    private BigDecimal getQuote(int isinSymbol, String isin, LocalDate date) {
+        NavigableMap<LocalDate, BigDecimal> quotesForIsin = quotesFor(isinSymbol);
         if (quotesForIsin == null) {
             log.warn("No quotes for ISIN {}", isin);
             return null;
@@ -89,16 +160,66 @@ public class QuotesLoader {
      */
     public int size() {
         return quotes.values()
-                .stream()
                 .map(Map::size)
                 .mapToInt(i -> i)
                 .sum();
     }
 
-    private void addQuote(String isin, LocalDate date, BigDecimal pricePerShare,
-                          Map<String, NavigableMap<LocalDate, BigDecimal>> newQuotes) {
-        newQuotes.computeIfAbsent(isin, k -> new TreeMap<>())
-                .put(date, pricePerShare);
+    /**
+     * Estimate memory held by the loaded quotes.
+     *
+     * @return footprint of the quotes
+     */
+    public Footprint footprint() {
+        ChunkedArray<NavigableMap<LocalDate, BigDecimal>> currentQuotes = quotes;
+        long records = 0;
+        long isins = 0;
+        for (NavigableMap<LocalDate, BigDecimal> quotesForIsin : currentQuotes.values().toList()) {
+            isins++;
+            records += quotesForIsin.size();
+        }
+        long bytes = currentQuotes.footprint() + isins * Footprint.TREE_MAP
+                + records * (Footprint.TREE_MAP_ENTRY + Footprint.LOCAL_DATE + Footprint.BIG_DECIMAL);
+        return Footprint.of(new Footprint.Structure(Footprint.QUOTES, records, isins, bytes, 0));
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * Drop the loaded data and encode the following loads with given symbol table, e.g. a fresh table per load
+     * of the {@link ValuationRunner}. Must not run concurrently with reads.
+     *
+     * @param symbols symbol table to use from now on
+     */
+    synchronized void reset(SymbolTable symbols) {
+        quotes = ChunkedArray.empty();
+        this.symbols = symbols;
+    }
+
+    /**
+     * Price of a share as of a date.
+     *
+     * @param isin          ISIN of the share
+     * @param date          date of the quote
+     * @param pricePerShare price of a single share
+     */
+    public record Quote(String isin, LocalDate date, BigDecimal pricePerShare) {
+    }
+
+    private NavigableMap<LocalDate, BigDecimal> quotesFor(int isinSymbol) {
+        return quotes.get(isinSymbol);
+    }
+
+    private static void addQuote(int isinSymbol, LocalDate date, BigDecimal pricePerShare,
+                                 ChunkedArray.Writer<NavigableMap<LocalDate, BigDecimal>> newQuotes) {
+        NavigableMap<LocalDate, BigDecimal> quotesForIsin = newQuotes.get(isinSymbol);
+        if (quotesForIsin == null) {
+            quotesForIsin = new TreeMap<>();
+            newQuotes.set(isinSymbol, quotesForIsin);
+        }
+        quotesForIsin.put(date, pricePerShare);
     }
 
     private static void validateStringValue(String stringValue, String exceptionMessage) {
@@ -2,32 +2,95 @@ package com.qplix.valuation;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 
 /**
  * Factory for reading resource files (e.g. CSV).
  */
 public class ResourceReaderFactory {
 
-    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+    /**
+     * Suffix of gzip compressed inputs.
+     */
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final CSVFormat LINE_FORMAT = CSVFormat.DEFAULT.builder()
+            .setDelimiter(';')
+            .setRecordSeparator('\n')
+            .build();
+    private static final CSVFormat CSV_FORMAT = LINE_FORMAT.builder()
             .setHeader()
             .setSkipHeaderRecord(true)
-            .setDelimiter(';')
             .build();
 
-    public static BufferedReader resourceFileReader(String name) {
-        return new BufferedReader(
-                new InputStreamReader(
-                        Objects.requireNonNull(
-                                ResourceReaderFactory.class.getResourceAsStream(name))));
+    /**
+     * Open reader of a classpath resource or, if there is no such resource, of a file (e.g. a shard).
+     * <p>
+     * Names ending with {@code .gz} are gzip compressed, they are decompressed by a separate thread while the
+     * reader parses the already decompressed data.
+     *
+     * @param name resource name or file path
+     * @return reader of the resource
+     */
+    public static BufferedReader resourceFileReader(String name) throws IOException {
+        InputStream stream = ResourceReaderFactory.class.getResourceAsStream(name);
+        if (stream == null && Files.isRegularFile(Path.of(name))) {
+            stream = Files.newInputStream(Path.of(name));
+        }
+        Objects.requireNonNull(stream, "Resource " + name + " not found");
+        if (name.endsWith(GZIP_SUFFIX)) {
+            stream = new DecompressingInputStream(stream, Path.of(name).getFileName().toString());
+        }
+        return new BufferedReader(new InputStreamReader(stream));
     }
 
     public static CSVParser csvParser(Reader reader) throws IOException {
         return new CSVParser(reader, CSV_FORMAT);
     }
 
+    /**
+     * Open printer writing the CSV format read by {@link #csvParser(Reader)}, values are quoted where needed.
+     *
+     * @param writer target of the printer (closed with the printer)
+     * @param header column names printed as the first record
+     * @return printer of the records
+     */
+    public static CSVPrinter csvPrinter(Writer writer, List<String> header) throws IOException {
+        CSVPrinter printer = new CSVPrinter(writer, LINE_FORMAT);
+        try {
+            printer.printRecord(header);
+        } catch (IOException e) {
+            printer.close();
+            throw e;
+        }
+        return printer;
+    }
+
+    /**
+     * Parse a single line of the CSV format (e.g. a streamed record or its header), quoted values may contain
+     * the delimiter.
+     *
+     * @param line line without the line break
+     * @return values of the line, empty for an empty line
+     * @throws java.io.UncheckedIOException if the line is malformed (e.g. has an unterminated quote)
+     */
+    public static List<String> csvValues(String line) throws IOException {
+        try (CSVParser parser = CSVParser.parse(line, LINE_FORMAT)) {
+            Iterator<CSVRecord> records = parser.iterator();
+            return records.hasNext() ? records.next().toList() : List.of();
+        }
+    }
+
 }
@@ -0,0 +1,144 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Valuation of an investor under many quote scenarios at once.
+ * <p>
+ * The fund graph is traversed once and every node carries an array of per-scenario values instead of a single one.
+ * Transactions, quotes and fund trees are looked up once per node and the value of every fund is computed once per
+ * request, so the cost of additional scenarios is only the arithmetic. The arithmetic per scenario is the same as
+ * in {@link ValuationRunner#valuate(String, LocalDate)}, thus the results are identical to valuating with swapped
+ * quotes.
+ */
+@Slf4j
+class ScenarioValuator {
+
+    /**
+     * Values of a fund which is being calculated, reaching such a fund again means it holds itself.
+     */
+    private static final BigDecimal[] IN_PROGRESS = new BigDecimal[0];
+
+    private final QuotesLoader quotesLoader;
+    private final InvestmentsLoader investmentsLoader;
+    private final TransactionsLoader transactionsLoader;
+
+    ScenarioValuator(QuotesLoader quotesLoader, InvestmentsLoader investmentsLoader,
+            TransactionsLoader transactionsLoader) {
+        this.quotesLoader = quotesLoader;
+        this.investmentsLoader = investmentsLoader;
+        this.transactionsLoader = transactionsLoader;
+    }
+
+    BigDecimal[] valuate(String investorId, LocalDate date, List<QuoteScenario> scenarios, Deadline deadline) {
+        InvestmentsLoader.InvestorTree investorTree =
+                investmentsLoader.getInvestorTree(investmentsLoader.symbols().find(investorId));
+        if (investorTree == null) {
+            log.warn("Investor {} not found", investorId);
+            return filled(scenarios.size(), BigDecimal.ZERO);
+        }
+
+        return new Request(date, scenarios, deadline).investmentValue(investorTree);
+    }
+
+    private static BigDecimal[] filled(int size, BigDecimal value) {
+        BigDecimal[] result = new BigDecimal[size];
+        Arrays.fill(result, value);
+        return result;
+    }
+
+    /**
+     * State of a single request, the fund values are shared by all paths reaching the fund.
+     */
+    private final class Request {
+
+        private final LocalDate date;
+        private final List<QuoteScenario> scenarios;
+        private final Deadline deadline;
+        private final SymbolTable symbols = investmentsLoader.symbols();
+        private final Map<Integer, BigDecimal[]> fundValues = new HashMap<>();
+
+        private Request(LocalDate date, List<QuoteScenario> scenarios, Deadline deadline) {
+            this.date = date;
+            this.scenarios = scenarios;
+            this.deadline = deadline;
+        }
+
+        private BigDecimal[] investmentValue(InvestmentsLoader.InvestorTree investmentTree) {
+            deadline.check();
+            BigDecimal[] result = filled(scenarios.size(), BigDecimal.ZERO);
+            for (InvestmentsLoader.InvestmentTree underlying : investmentTree.getUnderlyings()) {
+                BigDecimal[] underlyingValues = switch (underlying.getInvestmentType()) {
+                    case Stock -> calculateStockValue(underlying);
+                    case RealEstate -> filled(scenarios.size(),
+                            transactionsLoader.getValue(underlying.getInvestmentSymbol(), date));
+                    case Fonds -> calculateFund(underlying);
+                };
+
+                for (int s = 0; s < result.length; s++) {
+                    if (underlyingValues[s] != null) { // null means no value available
+                        result[s] = result[s].add(underlyingValues[s]);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private BigDecimal[] calculateFund(InvestmentsLoader.InvestmentTree investment) {
+            InvestmentsLoader.InvestorTree fundTree =
+                    investmentsLoader.getInvestorTree(investment.getAssetSymbol());
+            if (fundTree == null) {
+                log.warn("Fund {} has no investments", symbols.name(investment.getAssetSymbol()));
+                return filled(scenarios.size(), BigDecimal.ZERO);
+            }
+            BigDecimal value = transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
+            if (value == null || value.compareTo(BigDecimal.ZERO) == 0) {
+                log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
+                return new BigDecimal[scenarios.size()];
+            }
+
+            // not computeIfAbsent, the recursion adds other funds to the map
+            BigDecimal[] fundValue = fundValues.get(investment.getAssetSymbol());
+            if (fundValue == IN_PROGRESS) {
+                throw new IllegalStateException("Fund " + symbols.name(investment.getAssetSymbol()) + " holds itself");
+            }
+            if (fundValue == null) {
+                fundValues.put(investment.getAssetSymbol(), IN_PROGRESS);
+                fundValue = investmentValue(fundTree);
+                fundValues.put(investment.getAssetSymbol(), fundValue);
+            }
+
+            // Fund value is its value multiplied by total investments (divide by 100, because 100=100%)
+            BigDecimal[] result = new BigDecimal[scenarios.size()];
+            for (int s = 0; s < result.length; s++) {
+                result[s] = value.multiply(fundValue[s]).divide(BigDecimal.valueOf(100), RoundingMode.HALF_UP);
+            }
+            return result;
+        }
+
+        private BigDecimal[] calculateStockValue(InvestmentsLoader.InvestmentTree investment) {
+            BigDecimal[] result = new BigDecimal[scenarios.size()];
+            BigDecimal value = transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
+            if (value == null || value.compareTo(BigDecimal.ZERO) == 0) {
+                log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
+                return result;
+            }
+
+            BigDecimal quote = quotesLoader.getQuote(investment.getAssetSymbol(), date);
+            String isin = symbols.name(investment.getAssetSymbol()); // the scenarios are keyed by ISIN
+            for (int s = 0; s < result.length; s++) {
+                BigDecimal scenarioQuote = scenarios.get(s).apply(isin, quote);
+                // number of shares multiplied by their value, null if there is no quote in the scenario
+                result[s] = scenarioQuote == null ? null : scenarioQuote.multiply(value);
+            }
+            return result;
+        }
+    }
+}
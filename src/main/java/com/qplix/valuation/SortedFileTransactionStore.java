@@ -0,0 +1,323 @@
+package com.qplix.valuation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Transactions read on demand from a CSV file sorted by investment ID.
+ * <p>
+ * Only a sparse index is held in memory: the file is split into blocks of roughly equal size at line boundaries
+ * and for every block the first investment ID and its position is remembered. A lookup reads only the blocks
+ * which can contain the investment using positional reads, recently used blocks are kept in a bounded cache.
+ */
+@Slf4j
+class SortedFileTransactionStore implements TransactionStore {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final String header;
+    private final int recordCount;
+    private final int keyCount;
+
+    /**
+     * First investment ID of each block, sorted.
+     */
+    private final String[] firstKeys;
+    /**
+     * Start of each block in the file, the last element is the end of the file.
+     */
+    private final long[] blockStarts;
+
+    private final Map<Integer, Block> blockCache;
+    private final SymbolTable symbols;
+
+    private SortedFileTransactionStore(Path file, FileChannel channel, String header, int recordCount, int keyCount,
+                                       String[] firstKeys, long[] blockStarts, int cachedBlocks, SymbolTable symbols) {
+        this.file = file;
+        this.channel = channel;
+        this.header = header;
+        this.recordCount = recordCount;
+        this.keyCount = keyCount;
+        this.firstKeys = firstKeys;
+        this.blockStarts = blockStarts;
+        this.blockCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+        this.symbols = symbols;
+    }
+
+    /**
+     * Index the sorted file, the file stays open until the store is closed.
+     *
+     * @param file         CSV file with transactions sorted by investment ID
+     * @param blockSize    approximate number of bytes read per block
+     * @param cachedBlocks maximal number of blocks kept in memory
+     * @param symbols      symbol table of the loader, used to look up investments by symbol
+     * @return store reading the file
+     */
+    static SortedFileTransactionStore open(Path file, int blockSize, int cachedBlocks, SymbolTable symbols) {
+        if (blockSize <= 0 || cachedBlocks <= 0) {
+            throw new IllegalArgumentException("Block size and number of cached blocks must be positive");
+        }
+
+        List<String> firstKeys = new ArrayList<>();
+        List<Long> blockStarts = new ArrayList<>();
+        String header;
+        int recordCount = 0;
+        int keyCount = 0;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            LineReader lines = new LineReader(input);
+            header = lines.next();
+            if (header == null) {
+                throw new IllegalArgumentException("Missing header in " + file);
+            }
+            int keyColumn = ResourceReaderFactory.csvValues(header).indexOf("InvestmentId");
+            if (keyColumn < 0) {
+                throw new IllegalArgumentException("Missing InvestmentId column in " + file);
+            }
+
+            String previousKey = null;
+            long blockStart = -1;
+            long lineStart = lines.position();
+            String line;
+            while ((line = lines.next()) != null) {
+                if (!line.isBlank()) {
+                    // keys are parsed like the blocks, quoted keys may contain the delimiter
+                    String key = ResourceReaderFactory.csvValues(line).get(keyColumn);
+                    if (previousKey != null && key.compareTo(previousKey) < 0) {
+                        throw new IllegalArgumentException(
+                                "Transactions are not sorted by investment, " + key + " follows " + previousKey);
+                    }
+                    if (blockStart < 0 || lineStart - blockStart >= blockSize) {
+                        blockStart = lineStart;
+                        firstKeys.add(key);
+                        blockStarts.add(blockStart);
+                    }
+                    if (!key.equals(previousKey)) {
+                        keyCount++;
+                    }
+                    previousKey = key;
+                    recordCount++;
+                }
+                lineStart = lines.position();
+            }
+            blockStarts.add(lineStart);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to index transactions in " + file, e);
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            log.info("Indexed {} transactions in {} blocks of {}", recordCount, firstKeys.size(), file);
+            return new SortedFileTransactionStore(file, channel, header, recordCount, keyCount,
+                    firstKeys.toArray(new String[0]),
+                    blockStarts.stream().mapToLong(Long::longValue).toArray(),
+                    cachedBlocks, symbols);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open transactions in " + file, e);
+        }
+    }
+
+    @Override
+    public BigDecimal getValue(int investmentSymbol, LocalDate date) {
+        // the file is keyed by the investment IDs
+        return investmentSymbol < 0 ? null : getValue(symbols.name(investmentSymbol), date);
+    }
+
+    @Override
+    public BigDecimal getValue(String investmentId, LocalDate date) {
+        // the first block which can contain the investment is the last one starting with a lower investment,
+        // because the previous block may end with the first transactions of the investment
+        int block = Arrays.binarySearch(firstKeys, investmentId);
+        if (block < 0) {
+            block = -block - 2; // the block before the insertion point
+        } else {
+            block--;
+            while (block > 0 && firstKeys[block].equals(investmentId)) {
+                block--;
+            }
+        }
+        block = Math.max(block, 0);
+
+        BigDecimal result = null;
+        for (; block < firstKeys.length && firstKeys[block].compareTo(investmentId) <= 0; block++) {
+            Block content = block(block);
+            result = content.sum(investmentId, date, result);
+            if (content.lastKey().compareTo(investmentId) > 0) {
+                break; // the investment cannot continue in the next block
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return recordCount;
+    }
+
+    @Override
+    public Footprint.Structure footprint() {
+        long bytes = Footprint.array(firstKeys.length, Footprint.REFERENCE) + Footprint.array(blockStarts.length, 8);
+        for (String firstKey : firstKeys) {
+            bytes += Footprint.string(firstKey);
+        }
+        synchronized (blockCache) {
+            for (Block block : blockCache.values()) {
+                bytes += block.footprint();
+            }
+        }
+        // the file itself stays on disk, only the index and the cached blocks are held in memory
+        return new Footprint.Structure(Footprint.TRANSACTIONS, recordCount, keyCount, bytes, 0);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Unable to close {}", file, e);
+        }
+    }
+
+    private Block block(int index) {
+        synchronized (blockCache) {
+            Block cached = blockCache.get(index);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // read outside of the lock, concurrent readers of the same block only do duplicate work
+        Block block = readBlock(index);
+        synchronized (blockCache) {
+            blockCache.put(index, block);
+        }
+        return block;
+    }
+
+    private Block readBlock(int index) {
+        long start = blockStarts[index];
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(blockStarts[index + 1] - start));
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read transactions from " + file, e);
+        }
+
+        String content = new String(buffer.array(), StandardCharsets.UTF_8);
+        List<String> keys = new ArrayList<>();
+        List<LocalDate> dates = new ArrayList<>();
+        List<BigDecimal> values = new ArrayList<>();
+        // the header is prepended, so the rows are parsed with the same format as whole files
+        try (CSVParser csvParser = ResourceReaderFactory.csvParser(new StringReader(header + '\n' + content))) {
+            for (CSVRecord csvRecord : csvParser) {
+                keys.add(csvRecord.get("InvestmentId"));
+                dates.add(LocalDate.parse(csvRecord.get("Date")));
+                values.add(new BigDecimal(csvRecord.get("Value")));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to parse transactions from " + file, e);
+        }
+        return new Block(keys.toArray(new String[0]), dates.toArray(new LocalDate[0]), values.toArray(new BigDecimal[0]));
+    }
+
+    /**
+     * Parsed block, rows are in the file order, thus sorted by investment.
+     */
+    private record Block(String[] keys, LocalDate[] dates, BigDecimal[] values) {
+
+        String lastKey() {
+            return keys[keys.length - 1];
+        }
+
+        long footprint() {
+            long bytes = 3 * Footprint.array(keys.length, Footprint.REFERENCE)
+                    + keys.length * (Footprint.LOCAL_DATE + Footprint.BIG_DECIMAL);
+            for (String key : keys) {
+                bytes += Footprint.string(key); // parsed keys are not shared with the symbol table
+            }
+            return bytes;
+        }
+
+        BigDecimal sum(String investmentId, LocalDate date, BigDecimal partialSum) {
+            int index = Arrays.binarySearch(keys, investmentId);
+            if (index < 0) {
+                return partialSum;
+            }
+            while (index > 0 && keys[index - 1].equals(investmentId)) {
+                index--;
+            }
+
+            BigDecimal result = partialSum == null ? BigDecimal.ZERO : partialSum;
+            for (; index < keys.length && keys[index].equals(investmentId); index++) {
+                if (dates[index].isBefore(date)) { // strictly before given 'date'
+                    result = result.add(values[index]);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads lines while tracking their byte position in the stream.
+     */
+    private static final class LineReader {
+
+        private final InputStream input;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long position;
+
+        LineReader(InputStream input) {
+            this.input = input;
+        }
+
+        long position() {
+            return position;
+        }
+
+        String next() throws IOException {
+            line.reset();
+            int b;
+            while ((b = input.read()) >= 0) {
+                position++;
+                if (b == '\n') {
+                    return text();
+                }
+                line.write(b);
+            }
+            return line.size() == 0 ? null : text();
+        }
+
+        private String text() {
+            String text = line.toString(StandardCharsets.UTF_8);
+            return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.qplix.valuation;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Continuous valuation of subscribed investors fed by streams of transactions and quotes.
+ * <p>
+ * Every source is read by its own thread, its first line is the header of the usual CSV layout and every further
+ * line is a record. Parsed records are queued and a single thread applies whatever is queued (at most
+ * {@code maxBatchSize} records) as one micro-batch to the loaded data, so there is no artificial batching delay.
+ * The queue holds at most {@code QUEUED_BATCHES} batches, sources faster than the valuation are blocked rather
+ * than filling the heap.
+ * Afterwards only the subscribed investors reaching an updated investment or ISIN are revaluated and changed values
+ * are published. Investments are not streamed, the fund graph is fixed while the pipeline runs.
+ * <p>
+ * Transactions are appended on heap, so the runner must not have its transactions off heap or in a sorted file.
+ */
+@Slf4j
+public class StreamingValuation implements Flow.Publisher<StreamingValuation.Update>, AutoCloseable {
+
+    /**
+     * Tailed files are polled again right after new data, idle files ever more rarely up to the maximum.
+     */
+    private static final long MIN_POLL_MILLIS = 1;
+    private static final long MAX_POLL_MILLIS = 100;
+    private static final int QUEUED_BATCHES = 4;
+
+    private final ValuationRunner runner;
+    private final LocalDate valuationDate;
+    private final int maxBatchSize;
+
+    private final Map<String, Set<String>> investorsByInvestment = new HashMap<>();
+    private final Map<String, Set<String>> investorsByIsin = new HashMap<>();
+    private final Map<String, BigDecimal> values = new HashMap<>();
+
+    private final BlockingQueue<Tick> ticks;
+    private final SubmissionPublisher<Update> publisher = new SubmissionPublisher<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "streaming-valuation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Closeable> sources = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Create pipeline and start applying the records, sources are added by {@link #tail(Path, RecordType)}
+     * and {@link #read(InputStream, RecordType)}.
+     *
+     * @param runner        loaded valuation runner
+     * @param investorIds   investors whose values are published
+     * @param valuationDate valuation date (only records before the date change the values)
+     * @param maxBatchSize  maximal number of records applied at once
+     */
+    public StreamingValuation(
+            ValuationRunner runner, Collection<String> investorIds, LocalDate valuationDate, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.runner = runner;
+        this.valuationDate = valuationDate;
+        this.maxBatchSize = maxBatchSize;
+        this.ticks = new LinkedBlockingQueue<>((int) Math.min((long) maxBatchSize * QUEUED_BATCHES, Integer.MAX_VALUE));
+
+        for (String investorId : investorIds) {
+            InvestmentsLoader.Reachability reachability = runner.reachable(investorId);
+            for (String investmentId : reachability.investmentIds()) {
+                investorsByInvestment.computeIfAbsent(investmentId, k -> new HashSet<>()).add(investorId);
+            }
+            for (String isin : reachability.isins()) {
+                investorsByIsin.computeIfAbsent(isin, k -> new HashSet<>()).add(investorId);
+            }
+            values.put(investorId, runner.valuate(investorId, valuationDate));
+        }
+
+        executor.execute(this::apply);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Update> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Follow lines appended to given file, the header is read from the first line and the lines present when
+     * the method is called are skipped. An idle file is polled with a backoff, so new lines are noticed within
+     * {@code MAX_POLL_MILLIS}.
+     *
+     * @param file file to follow
+     * @param type type of the records in the file
+     */
+    public void tail(Path file, RecordType type) {
+        FileChannel channel;
+        long start;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            start = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open " + file, e);
+        }
+        register(channel);
+        executor.execute(() -> {
+            try {
+                tailLines(channel, type, start);
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Reading of {} failed", file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read lines from given stream (e.g. a socket) until it ends, the first line is the header.
+     *
+     * @param input stream to read (closed with the pipeline)
+     * @param type  type of the records in the stream
+     */
+    public void read(InputStream input, RecordType type) {
+        register(input);
+        executor.execute(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                Parser parser = new Parser(type, reader.readLine());
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parser.parse(line);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Reading of {} stream failed", type, e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (sources) {
+            for (Closeable source : sources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close source", e);
+                }
+            }
+        }
+        executor.shutdownNow();
+        publisher.close();
+    }
+
+    private void register(Closeable source) {
+        synchronized (sources) {
+            if (closed) {
+                throw new IllegalStateException("Streaming valuation is closed");
+            }
+            sources.add(source);
+        }
+    }
+
+    private void tailLines(FileChannel channel, RecordType type, long start) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        // header from the beginning, records from the end of the file when tailing started
+        Parser parser = null;
+        long position = 0;
+        long pollMillis = MIN_POLL_MILLIS;
+        while (parser == null && !closed) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                if (!sleep(pollMillis)) {
+                    return;
+                }
+                pollMillis = Math.min(2 * pollMillis, MAX_POLL_MILLIS);
+                continue;
+            }
+            pollMillis = MIN_POLL_MILLIS;
+            for (int i = 0; i < read && parser == null; i++) {
+                byte b = buffer.get(i);
+                position++;
+                if (b == '\n') {
+                    parser = new Parser(type, line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+        position = Math.max(position, start);
+
+        while (!closed) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                if (!sleep(pollMillis)) {
+                    return;
+                }
+                pollMillis = Math.min(2 * pollMillis, MAX_POLL_MILLIS);
+                continue;
+            }
+            pollMillis = MIN_POLL_MILLIS;
+            position += read;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    parser.parse(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for more data to be appended.
+     *
+     * @param millis time to wait
+     * @return false if the thread was interrupted
+     */
+    private static boolean sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void apply() {
+        List<Tick> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                batch.add(ticks.take());
+                ticks.drainTo(batch, maxBatchSize - 1);
+                applyBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Streaming valuation failed", e);
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    private void applyBatch(List<Tick> batch) {
+        List<TransactionsLoader.Transaction> transactions = new ArrayList<>();
+        List<QuotesLoader.Quote> quotes = new ArrayList<>();
+        long receivedNanos = Long.MAX_VALUE;
+        for (Tick tick : batch) {
+            receivedNanos = Math.min(receivedNanos, tick.receivedNanos());
+            if (tick.record() instanceof TransactionsLoader.Transaction transaction) {
+                transactions.add(transaction);
+            } else {
+                quotes.add((QuotesLoader.Quote) tick.record());
+            }
+        }
+
+        Set<String> affectedInvestors = new HashSet<>();
+        if (!transactions.isEmpty()) {
+            for (String investmentId : runner.appendTransactions(transactions)) {
+                affectedInvestors.addAll(investorsByInvestment.getOrDefault(investmentId, Set.of()));
+            }
+        }
+        if (!quotes.isEmpty()) {
+            runner.appendQuotes(quotes);
+            for (QuotesLoader.Quote quote : quotes) {
+                affectedInvestors.addAll(investorsByIsin.getOrDefault(quote.isin(), Set.of()));
+            }
+        }
+
+        for (String investorId : affectedInvestors) {
+            BigDecimal value = runner.valuate(investorId, valuationDate);
+            if (!value.equals(values.put(investorId, value))) {
+                publisher.submit(new Update(investorId, valuationDate, value,
+                        Duration.ofNanos(System.nanoTime() - receivedNanos)));
+            }
+        }
+    }
+
+    /**
+     * Updated value of a subscribed investor.
+     *
+     * @param investorId investor
+     * @param date       valuation date
+     * @param value      new value of the investor
+     * @param latency    time from receiving the first record of the micro-batch to publishing the value
+     */
+    public record Update(String investorId, LocalDate date, BigDecimal value, Duration latency) {
+    }
+
+    /**
+     * Type of streamed records.
+     */
+    public enum RecordType {
+        Transaction,
+        Quote
+    }
+
+    /**
+     * Parsed record with the time it was received.
+     */
+    private record Tick(Object record, long receivedNanos) {
+    }
+
+    /**
+     * Parser of the lines of a single source in the CSV format of the loaded files, columns are located by
+     * the header.
+     */
+    private final class Parser {
+
+        private final RecordType type;
+        private final int idColumn;
+        private final int dateColumn;
+        private final int valueColumn;
+
+        private Parser(RecordType type, String header) throws IOException {
+            if (header == null) {
+                throw new IllegalArgumentException("Header of " + type + " stream is missing");
+            }
+            List<String> columns = ResourceReaderFactory.csvValues(header.strip());
+            this.type = type;
+            this.idColumn = column(columns, type == RecordType.Transaction ? "InvestmentId" : "ISIN");
+            this.dateColumn = column(columns, "Date");
+            this.valueColumn = column(columns, type == RecordType.Transaction ? "Value" : "PricePerShare");
+        }
+
+        private void parse(String line) throws InterruptedIOException {
+            long receivedNanos = System.nanoTime();
+            if (line.isBlank()) {
+                return;
+            }
+            Object record;
+            try {
+                List<String> values = ResourceReaderFactory.csvValues(line.strip());
+                String id = values.get(idColumn);
+                LocalDate date = LocalDate.parse(values.get(dateColumn));
+                BigDecimal value = new BigDecimal(values.get(valueColumn));
+                if (id.isBlank()) {
+                    throw new IllegalArgumentException("Missing identifier");
+                }
+
+                record = type == RecordType.Transaction
+                        ? new TransactionsLoader.Transaction(id, date, value)
+                        : new QuotesLoader.Quote(id, date, value);
+            } catch (RuntimeException | IOException e) {
+                // a malformed record must not stop the stream
+                log.warn("Skipping invalid {} record {}", type, line, e);
+                return;
+            }
+
+            try {
+                ticks.put(new Tick(record, receivedNanos)); // waits while the valuation is behind
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reading of " + type + " records was interrupted");
+            }
+        }
+
+        private static int column(List<String> columns, String name) {
+            int index = columns.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Column " + name + " is missing");
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.qplix.valuation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of identifiers (investor IDs, investment IDs, ISINs, cities) shared by all loaders.
+ * <p>
+ * Every distinct identifier is stored once and mapped to a dense int, so the loaders can index their data
+ * by arrays instead of hashing Strings. Symbols are never removed, reloading a file reuses the existing ones.
+ */
+public class SymbolTable {
+
+    /**
+     * Returned by {@link #find(String)} for identifiers which were never interned.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> symbolsByName = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024];
+    private int size;
+
+    /**
+     * Get symbol of given identifier, creating a new one if the identifier is seen for the first time.
+     *
+     * @param name identifier
+     * @return dense int representing the identifier
+     */
+    public synchronized int intern(String name) {
+        Integer existing = symbolsByName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        int symbol = size++;
+        names[symbol] = name;
+        symbolsByName.put(name, symbol); // published last, readers finding the symbol see its name
+        return symbol;
+    }
+
+    /**
+     * Get symbol of given identifier without creating it.
+     *
+     * @param name identifier
+     * @return symbol of the identifier or {@link #UNKNOWN}
+     */
+    public int find(String name) {
+        Integer symbol = symbolsByName.get(name);
+        return symbol == null ? UNKNOWN : symbol;
+    }
+
+    /**
+     * Get identifier represented by given symbol.
+     *
+     * @param symbol symbol returned by {@link #intern(String)}
+     * @return the identifier (the same instance for all calls)
+     */
+    public String name(int symbol) {
+        return names[symbol];
+    }
+
+    /**
+     * Return number of symbols, all symbols are lower than this number.
+     *
+     * @return number of symbols
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Estimate memory held by the identifiers and their index.
+     *
+     * @return footprint of the {@link Footprint#SYMBOLS} structure
+     */
+    public synchronized Footprint.Structure footprint() {
+        // the hash table is a power of two kept at most three quarters full
+        long bytes = Footprint.array(names.length, Footprint.REFERENCE)
+                + Footprint.array(Integer.highestOneBit(Math.max(size * 4 / 3, 1)) * 2L, Footprint.REFERENCE)
+                + size * (Footprint.HASH_MAP_NODE + Footprint.INTEGER);
+        for (int symbol = 0; symbol < size; symbol++) {
+            bytes += Footprint.string(names[symbol]);
+        }
+        return new Footprint.Structure(Footprint.SYMBOLS, size, size, bytes, 0);
+    }
+}
@@ -0,0 +1,110 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Storage of loaded transactions.
+ */
+interface TransactionStore extends AutoCloseable {
+
+    /**
+     * Get summary value of transactions strictly before given date.
+     *
+     * @param investmentId investment for which to get value
+     * @param date         date for which to get value
+     * @return summary value or null if there are no transactions for the investment at all
+     */
+    BigDecimal getValue(String investmentId, LocalDate date);
+
+    /**
+     * Get summary value of transactions strictly before given date.
+     *
+     * @param investmentSymbol symbol of the investment in the symbol table of the loader
+     * @param date             date for which to get value
+     * @return summary value or null if there are no transactions for the investment at all
+     */
+    BigDecimal getValue(int investmentSymbol, LocalDate date);
+
+    /**
+     * Get summary value of transactions made on or after {@code from} and strictly before {@code to}.
+     *
+     * @param investmentId investment for which to get the change
+     * @param from         first date of the change (inclusive)
+     * @param to           last date of the change (exclusive)
+     * @return summary value or null if there are no transactions for the investment at all
+     */
+    default BigDecimal getChange(String investmentId, LocalDate from, LocalDate to) {
+        BigDecimal valueTo = getValue(investmentId, to);
+        if (valueTo == null) {
+            return null;
+        }
+        return valueTo.subtract(getValue(investmentId, from));
+    }
+
+    /**
+     * Get summary value of transactions made on or after {@code from} and strictly before {@code to}.
+     *
+     * @param investmentSymbol symbol of the investment in the symbol table of the loader
+     * @param from             first date of the change (inclusive)
+     * @param to               last date of the change (exclusive)
+     * @return summary value or null if there are no transactions for the investment at all
+     */
+    default BigDecimal getChange(int investmentSymbol, LocalDate from, LocalDate to) {
+        BigDecimal valueTo = getValue(investmentSymbol, to);
+        if (valueTo == null) {
+            return null;
+        }
+        return valueTo.subtract(getValue(investmentSymbol, from));
+    }
+
+    /**
+     * Return number of records in the store.
+     *
+     * @return number of records in the store
+     */
+    int size();
+
+    /**
+     * Estimate memory held by the store.
+     *
+     * @return footprint of the {@link Footprint#TRANSACTIONS} structure
+     */
+    Footprint.Structure footprint();
+
+    /**
+     * Create builder of a new store holding the transactions of this store and the added ones, this store is not
+     * modified and can be used concurrently.
+     *
+     * @param symbols symbol table of the loader
+     * @return builder of the new store
+     * @throws IllegalStateException if the store does not support appending
+     */
+    default Builder appender(SymbolTable symbols) {
+        throw new IllegalStateException("Transactions of " + getClass().getSimpleName() + " cannot be appended to");
+    }
+
+    /**
+     * Release resources held by the store, called when the store is replaced by a newly loaded one.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Collects parsed transactions (investments encoded as symbols) and creates the store once all of them are known.
+     */
+    interface Builder extends AutoCloseable {
+
+        void add(int investmentSymbol, LocalDate date, BigDecimal value);
+
+        TransactionStore build();
+
+        /**
+         * Release resources staged by the builder, e.g. when loading fails, the built store is not affected.
+         */
+        @Override
+        default void close() {
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package com.qplix.valuation;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
 /**
@@ -23,43 +32,273 @@ import org.apache.commons.csv.CSVRecord;
 public class TransactionsLoader {
 
     /**
-     * Quote values indexed by ISIN
+     * Maximal number of transactions sorted in memory by {@link #writeSorted(String, Path)}.
      */
-    private Map<String, NavigableMap<LocalDate, List<BigDecimal>>> transactions = Collections.emptyMap();
+    private static final int SORTED_RUN_RECORDS = 256 * 1024;
+
+    private volatile SymbolTable symbols;
+
+    /**
+     * Transaction values indexed by investment symbol
+     */
+    private volatile TransactionStore transactions = HeapTransactionStore.EMPTY;
+    /**
+     * Merged investment IDs of the last load, applied to appended transactions too
+     */
+    private volatile Map<String, String> mergedInvestments = Map.of();
+
+    public TransactionsLoader() {
+        this(new SymbolTable());
+    }
 
     /**
-     * Load quotes from CSV file for given date.
+     * Create loader sharing identifiers with other loaders.
+     *
+     * @param symbols symbol table used to encode investment IDs
+     */
+    public TransactionsLoader(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Load transactions from CSV file and keep them on heap.
      *
      * @param fileName name of the file to load
      */
     public void load(String fileName) {
-        log.info("Loading transactions...");
+        load(fileName, investmentId -> true, Map.of(), new HeapTransactionStore.Builder(symbols));
+    }
 
-        Map<String, NavigableMap<LocalDate, List<BigDecimal>>> newTransactions = new HashMap<>();
+    /**
+     * Load only transactions of given investments from CSV file and keep them on heap.
+     *
+     * @param fileName         name of the file to load
+     * @param investmentFilter investments to keep, other rows are skipped without being parsed
+     */
+    public void load(String fileName, Predicate<String> investmentFilter) {
+        load(fileName, investmentFilter, Map.of(), new HeapTransactionStore.Builder(symbols));
+    }
 
+    /**
+     * Load transactions from CSV file and keep them on heap, transactions of merged investments are added
+     * to the investment they were merged into.
+     *
+     * @param fileName          name of the file to load
+     * @param investmentFilter  investments to keep (after merging), other rows are skipped without being parsed
+     * @param mergedInvestments merged investment IDs mapped to the investment IDs they were merged into
+     *                          (see {@link InvestmentsLoader#compact()})
+     */
+    public void load(String fileName, Predicate<String> investmentFilter, Map<String, String> mergedInvestments) {
+        load(fileName, investmentFilter, mergedInvestments, new HeapTransactionStore.Builder(symbols));
+    }
+
+    /**
+     * Load transactions from CSV file and keep them outside of the heap with pre-summed values.
+     *
+     * @param fileName   name of the file to load
+     * @param mappedFile file to which the transactions are memory mapped or null to keep them in direct memory
+     */
+    public void loadOffHeap(String fileName, Path mappedFile) {
+        loadOffHeap(fileName, mappedFile, Map.of());
+    }
+
+    /**
+     * Load transactions from CSV file and keep them outside of the heap with pre-summed values, transactions
+     * of merged investments are added to the investment they were merged into.
+     *
+     * @param fileName          name of the file to load
+     * @param mappedFile        file to which the transactions are memory mapped or null to keep them in direct memory
+     * @param mergedInvestments merged investment IDs mapped to the investment IDs they were merged into
+     *                          (see {@link InvestmentsLoader#compact()})
+     */
+    public void loadOffHeap(String fileName, Path mappedFile, Map<String, String> mergedInvestments) {
+        load(fileName, investmentId -> true, mergedInvestments,
+                new OffHeapTransactionStore.Builder(symbols, mappedFile));
+    }
+
+    /**
+     * Read transactions on demand from a file sorted by investment ID, only a sparse index and a bounded number
+     * of blocks are held in memory.
+     *
+     * @param sortedFile   CSV file sorted by investment ID (see {@link #writeSorted(String, Path)})
+     * @param blockSize    approximate number of bytes read at once
+     * @param cachedBlocks maximal number of blocks kept in memory
+     */
+    public void loadSorted(Path sortedFile, int blockSize, int cachedBlocks) {
+        log.info("Indexing transactions...");
+
+        TransactionStore sortedTransactions =
+                SortedFileTransactionStore.open(sortedFile, blockSize, cachedBlocks, symbols);
+        synchronized (this) {
+            replace(sortedTransactions);
+            mergedInvestments = Map.of();
+        }
+
+        log.info("Indexed {} transactions", size());
+    }
+
+    /**
+     * Write transactions from CSV file into a file sorted by investment ID for {@link #loadSorted(Path, int, int)}.
+     * Transactions of the same investment keep their order.
+     * <p>
+     * The file is sorted externally: runs of at most {@code SORTED_RUN_RECORDS} transactions are sorted in memory
+     * and written to temporary files next to the target, which are then merged.
+     *
+     * @param fileName   name of the file to sort
+     * @param sortedFile target file
+     */
+    public static void writeSorted(String fileName, Path sortedFile) {
+        writeSorted(fileName, sortedFile, SORTED_RUN_RECORDS);
+    }
+
+    static void writeSorted(String fileName, Path sortedFile, int runRecords) {
+        List<Path> runs = new ArrayList<>();
         try (Reader reader = ResourceReaderFactory.resourceFileReader(fileName);
              CSVParser csvParser = ResourceReaderFactory.csvParser(reader)) {
+            List<String> header = csvParser.getHeaderNames();
+            List<CSVRecord> records = new ArrayList<>();
             for (CSVRecord csvRecord : csvParser) {
-                String investmentId = csvRecord.get("InvestmentId");
-                validateStringValue(investmentId, "Missing Investment ID for Transaction");
+                validateStringValue(csvRecord.get("InvestmentId"), "Missing Investment ID for Transaction");
+                records.add(csvRecord);
+                if (records.size() == runRecords) {
+                    runs.add(writeRun(records, header, sortedFile));
+                    records.clear();
+                }
+            }
 
-                String dateString = csvRecord.get("Date");
-                validateStringValue(dateString, "Missing date for Transaction");
-                LocalDate date = LocalDate.parse(dateString);
+            if (runs.isEmpty()) {
+                writeRecords(records, header, sortedFile);
+            } else {
+                if (!records.isEmpty()) {
+                    runs.add(writeRun(records, header, sortedFile));
+                }
+                mergeRuns(runs, header, sortedFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write sorted transactions to " + sortedFile, e);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Unable to load transactions from file " + fileName, e);
+        } finally {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    log.warn("Unable to delete sorted run {}", run, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort records by investment ID into a temporary file next to the sorted file.
+     */
+    private static Path writeRun(List<CSVRecord> records, List<String> header, Path sortedFile) throws IOException {
+        Path directory = sortedFile.toAbsolutePath().getParent();
+        Path run = Files.createTempFile(directory, sortedFile.getFileName().toString(), ".run");
+        writeRecords(records, header, run);
+        return run;
+    }
 
-                String valueString = csvRecord.get("Value");
-                validateStringValue(valueString, "Missing value for Transaction");
-                BigDecimal value = new BigDecimal(valueString);
+    private static void writeRecords(List<CSVRecord> records, List<String> header, Path file) throws IOException {
+        // the sort is stable, transactions of the same investment keep their order
+        records.sort(Comparator.comparing(csvRecord -> csvRecord.get("InvestmentId")));
+        try (CSVPrinter printer = ResourceReaderFactory.csvPrinter(Files.newBufferedWriter(file), header)) {
+            for (CSVRecord csvRecord : records) {
+                printer.printRecord(csvRecord.values());
+            }
+        }
+    }
 
-                addTransaction(investmentId, date, value, newTransactions);
+    /**
+     * Merge sorted runs into the sorted file, equal investment IDs are taken from earlier runs first.
+     */
+    private static void mergeRuns(List<Path> runs, List<String> header, Path sortedFile) throws IOException {
+        List<SortedRun> openRuns = new ArrayList<>();
+        PriorityQueue<SortedRun> queue = new PriorityQueue<>(Comparator
+                .comparing((SortedRun run) -> run.current().get("InvestmentId"))
+                .thenComparingInt(SortedRun::index));
+        try (CSVPrinter printer = ResourceReaderFactory.csvPrinter(Files.newBufferedWriter(sortedFile), header)) {
+            for (Path run : runs) {
+                CSVParser csvParser = ResourceReaderFactory.csvParser(Files.newBufferedReader(run));
+                openRuns.add(new SortedRun(openRuns.size(), csvParser));
+            }
+            queue.addAll(openRuns);
+            SortedRun run;
+            while ((run = queue.poll()) != null) {
+                printer.printRecord(run.current().values());
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (SortedRun run : openRuns) {
+                run.close();
             }
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Unable to load quotes from file " + fileName, e);
         }
+    }
 
-        transactions = newTransactions;
+    private void load(String fileName, Predicate<String> investmentFilter, Map<String, String> mergedInvestments,
+                      TransactionStore.Builder builder) {
+        log.info("Loading transactions...");
+
+        TransactionStore newTransactions;
+        try (builder) {
+            try (Reader reader = ResourceReaderFactory.resourceFileReader(fileName);
+                 CSVParser csvParser = ResourceReaderFactory.csvParser(reader)) {
+                for (CSVRecord csvRecord : csvParser) {
+                    String investmentId = csvRecord.get("InvestmentId");
+                    validateStringValue(investmentId, "Missing Investment ID for Transaction");
+                    investmentId = mergedInvestments.getOrDefault(investmentId, investmentId);
+                    if (!investmentFilter.test(investmentId)) {
+                        continue;
+                    }
+
+                    String dateString = csvRecord.get("Date");
+                    validateStringValue(dateString, "Missing date for Transaction");
+                    LocalDate date = LocalDate.parse(dateString);
+
+                    String valueString = csvRecord.get("Value");
+                    validateStringValue(valueString, "Missing value for Transaction");
+                    BigDecimal value = new BigDecimal(valueString);
 
-        log.info("Loaded {} transactions", newTransactions.size());
+                    builder.add(symbols.intern(investmentId), date, value);
+                }
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Unable to load transactions from file " + fileName, e);
+            }
+
+            newTransactions = builder.build();
+        }
+        synchronized (this) {
+            replace(newTransactions);
+            this.mergedInvestments = mergedInvestments;
+        }
+
+        log.info("Loaded {} transactions", size());
+    }
+
+    /**
+     * Append transactions to the loaded ones (only transactions loaded on heap can be appended to).
+     * <p>
+     * The loaded transactions are not modified, a copy sharing all untouched investments replaces them at once,
+     * so concurrent valuations see either none or all of the appended transactions.
+     *
+     * @param newTransactions transactions to append
+     * @return IDs of the investments with appended transactions (merged investments are reported as the investment
+     * they were merged into)
+     */
+    public synchronized Set<String> append(List<Transaction> newTransactions) {
+        TransactionStore.Builder appender = transactions.appender(symbols);
+        Set<String> investmentIds = new HashSet<>();
+        for (Transaction transaction : newTransactions) {
+            String investmentId = mergedInvestments.getOrDefault(transaction.investmentId(), transaction.investmentId());
+            appender.add(symbols.intern(investmentId), transaction.date(), transaction.value());
+            investmentIds.add(investmentId);
+        }
+        replace(appender.build());
+
+        log.debug("Appended {} transactions", newTransactions.size());
+        return investmentIds;
     }
 
     /**
@@ -70,18 +309,66 @@ public class TransactionsLoader {
      * @return summary value for given investment and date or null if not present
      */
     public BigDecimal getValue(String investmentId, LocalDate date) {
-        NavigableMap<LocalDate, List<BigDecimal>> transactionsForInvestment = transactions.get(investmentId);
-        if (transactionsForInvestment == null) {
+        BigDecimal value = read(store -> store.getValue(investmentId, date));
+        if (value == null) {
+            log.warn("No transactions for investment {}", investmentId);
+            return BigDecimal.ZERO;
+        }
+
+        return value;
+    }
+
+    /**
+     * Get summary value for given investment and date, used by the valuation to avoid lookups of the IDs.
+     *
+     * @param investmentSymbol symbol of the investment in the symbol table of the loader
+     * @param date             date for which to get value
+     * @return summary value for given investment and date or zero if not present
+     */
+    public BigDecimal getValue(int investmentSymbol, LocalDate date) {
+        BigDecimal value = read(store -> store.getValue(investmentSymbol, date));
+        if (value == null) {
+            log.warn("No transactions for investment {}", symbols.name(investmentSymbol));
+            return BigDecimal.ZERO;
+        }
+
+        return value;
+    }
+
+    /**
+     * Get summary value of transactions made in given period.
+     *
+     * @param investmentId investment for which to get the change
+     * @param from         first date of the period (inclusive)
+     * @param to           last date of the period (exclusive)
+     * @return summary value of transactions in the period (zero if there are none)
+     */
+    public BigDecimal getChange(String investmentId, LocalDate from, LocalDate to) {
+        BigDecimal change = read(store -> store.getChange(investmentId, from, to));
+        if (change == null) {
             log.warn("No transactions for investment {}", investmentId);
             return BigDecimal.ZERO;
         }
 
-        // this will return value strictly before given 'date'
-        return transactionsForInvestment.headMap(date, false)
-                .values()
-                .stream()
-                .flatMap(List::stream)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return change;
+    }
+
+    /**
+     * Get summary value of transactions made in given period.
+     *
+     * @param investmentSymbol symbol of the investment in the symbol table of the loader
+     * @param from             first date of the period (inclusive)
+     * @param to               last date of the period (exclusive)
+     * @return summary value of transactions in the period (zero if there are none)
+     */
+    public BigDecimal getChange(int investmentSymbol, LocalDate from, LocalDate to) {
+        BigDecimal change = read(store -> store.getChange(investmentSymbol, from, to));
+        if (change == null) {
+            log.warn("No transactions for investment {}", symbols.name(investmentSymbol));
+            return BigDecimal.ZERO;
+        }
+
+        return change;
     }
 
     /**
@@ -90,18 +377,65 @@ public class TransactionsLoader {
      * @return number of records in cache
      */
     public int size() {
-        return transactions.values()
-                .stream()
-                .map(Map::size)
-                .mapToInt(i -> i)
-                .sum();
+        return transactions.size();
+    }
+
+    /**
+     * Estimate memory held by the loaded transactions.
+     *
+     * @return footprint of the transactions
+     */
+    public Footprint footprint() {
+        return Footprint.of(transactions.footprint());
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    /**
+     * Drop the loaded data and encode the following loads with given symbol table, e.g. a fresh table per load
+     * of the {@link ValuationRunner}. Must not run concurrently with reads.
+     *
+     * @param symbols symbol table to use from now on
+     */
+    synchronized void reset(SymbolTable symbols) {
+        replace(HeapTransactionStore.EMPTY);
+        mergedInvestments = Map.of();
+        this.symbols = symbols;
+    }
+
+    /**
+     * Single transaction of an investment.
+     *
+     * @param investmentId investment of the transaction
+     * @param date         date of the transaction
+     * @param value        number of shares, value of the real estate or percentage of the fund
+     */
+    public record Transaction(String investmentId, LocalDate date, BigDecimal value) {
+    }
+
+    /**
+     * Read from the current store, a read racing a load is repeated on the new store once the replaced one
+     * has been closed.
+     */
+    private BigDecimal read(Function<TransactionStore, BigDecimal> reader) {
+        while (true) {
+            TransactionStore current = transactions;
+            try {
+                return reader.apply(current);
+            } catch (IllegalStateException e) {
+                if (current == transactions) {
+                    throw e;
+                }
+            }
+        }
     }
 
-    private void addTransaction(String investmentId, LocalDate date, BigDecimal value,
-                                Map<String, NavigableMap<LocalDate, List<BigDecimal>>> newTransactions) {
-        newTransactions.computeIfAbsent(investmentId, k -> new TreeMap<>())
-                .computeIfAbsent(date, k -> new ArrayList<>())
-                .add(value);
+    private void replace(TransactionStore newTransactions) {
+        TransactionStore oldTransactions = transactions;
+        transactions = newTransactions;
+        oldTransactions.close();
     }
 
     private static void validateStringValue(String stringValue, String exceptionMessage) {
@@ -109,4 +443,40 @@ public class TransactionsLoader {
             throw new IllegalArgumentException(exceptionMessage);
         }
     }
+
+    /**
+     * Cursor over the records of a sorted run.
+     */
+    private static final class SortedRun implements Closeable {
+
+        private final int index;
+        private final CSVParser csvParser;
+        private final Iterator<CSVRecord> records;
+        private CSVRecord current;
+
+        private SortedRun(int index, CSVParser csvParser) {
+            this.index = index;
+            this.csvParser = csvParser;
+            this.records = csvParser.iterator();
+            this.current = records.next(); // runs are never empty
+        }
+
+        int index() {
+            return index;
+        }
+
+        CSVRecord current() {
+            return current;
+        }
+
+        boolean advance() {
+            current = records.hasNext() ? records.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            csvParser.close();
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.qplix.valuation;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Change of investor's value between two dates.
+ *
+ * @param investorId           valuated investor
+ * @param from                 first valuation date
+ * @param to                   second valuation date
+ * @param valueFrom            value as of {@code from}
+ * @param valueTo              value as of {@code to}
+ * @param change               difference of the values ({@code valueTo - valueFrom})
+ * @param largestContributions leaves (stocks, real estates) with the largest absolute contribution to the change
+ */
+public record ValuationChange(String investorId, LocalDate from, LocalDate to,
+                              BigDecimal valueFrom, BigDecimal valueTo, BigDecimal change,
+                              List<Contribution> largestContributions) {
+
+    /**
+     * Contribution of a single leaf investment to the change, weighted by the fund shares on the path from
+     * the investor. Contributions are not rounded, so their sum can differ from the change by the rounding of funds.
+     *
+     * @param investmentId   leaf investment
+     * @param investmentType type of the leaf investment
+     * @param assetId        ISIN or city of the leaf investment
+     * @param change         contribution to the change
+     */
+    public record Contribution(String investmentId, InvestmentsLoader.InvestmentType investmentType, String assetId,
+                               BigDecimal change) {
+    }
+}
@@ -0,0 +1,336 @@
+package com.qplix.valuation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinator of valuations sharded over local worker processes.
+ * <p>
+ * The data set is split by {@link DatasetSharder} along the components of the fund graph, every worker JVM loads
+ * only its shard and serves it through {@link ValuationWorker}. The coordinator knows the shard of every investor,
+ * routes the requests to the workers over loopback sockets and merges the results.
+ */
+@Slf4j
+public class ValuationCoordinator implements AutoCloseable {
+
+    private final List<Process> processes;
+    private final List<WorkerConnection> connections;
+    private final Map<String, Integer> shardByInvestor;
+
+    private ValuationCoordinator(
+            List<Process> processes, List<WorkerConnection> connections, Map<String, Integer> shardByInvestor) {
+        this.processes = processes;
+        this.connections = connections;
+        this.shardByInvestor = shardByInvestor;
+    }
+
+    /**
+     * Shard the data set and start one worker process per shard.
+     *
+     * @param investmentsFile  name of the investments file
+     * @param transactionsFile name of the transactions file
+     * @param quotesFile       name of the quotes file
+     * @param workers          number of worker processes
+     * @param workDirectory    directory to write the shards to
+     * @return coordinator connected to all workers
+     */
+    public static ValuationCoordinator start(String investmentsFile, String transactionsFile, String quotesFile,
+                                             int workers, Path workDirectory) {
+        List<InvestmentsLoader.Partition> partitions =
+                DatasetSharder.write(investmentsFile, transactionsFile, quotesFile, workers, workDirectory);
+
+        Map<String, Integer> shardByInvestor = new HashMap<>();
+        for (InvestmentsLoader.Partition partition : partitions) {
+            for (String investorId : partition.investorIds()) {
+                shardByInvestor.put(investorId, partition.index());
+            }
+        }
+
+        List<Process> processes = new ArrayList<>();
+        List<WorkerConnection> connections = new ArrayList<>();
+        try {
+            // start all workers first, so they load their shards in parallel
+            for (int shard = 0; shard < workers; shard++) {
+                processes.add(startWorker(DatasetSharder.shardDirectory(workDirectory, shard)));
+            }
+            for (Process process : processes) {
+                connections.add(new WorkerConnection(awaitReady(process)));
+            }
+        } catch (IOException | RuntimeException e) {
+            connections.forEach(WorkerConnection::close);
+            processes.forEach(Process::destroyForcibly);
+            throw new IllegalStateException("Unable to start valuation workers", e);
+        }
+
+        log.info("Coordinating {} workers", workers);
+        return new ValuationCoordinator(processes, connections, shardByInvestor);
+    }
+
+    /**
+     * Valuate investor by the worker holding its shard.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     * @return value of the investor (zero if there is no such investor)
+     */
+    public BigDecimal valuate(String investorId, LocalDate date) {
+        return valuate(List.of(new Request(investorId, date))).get(0);
+    }
+
+    /**
+     * Valuate a batch of requests, every worker gets its part of the batch at once and all workers valuate
+     * their parts at the same time.
+     *
+     * @param requests requests to valuate
+     * @return values in the order of the requests
+     * @throws IllegalArgumentException if a worker failed to valuate some of the requests
+     */
+    public List<BigDecimal> valuate(List<Request> requests) {
+        Map<Integer, List<Integer>> indexesByShard = new HashMap<>();
+        BigDecimal[] result = new BigDecimal[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            Integer shard = shardByInvestor.get(requests.get(i).investorId());
+            if (shard == null) {
+                log.warn("Investor {} not found", requests.get(i).investorId());
+                result[i] = BigDecimal.ZERO;
+            } else {
+                indexesByShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // send all parts before waiting for any of them
+        Map<Integer, CompletableFuture<List<BigDecimal>>> valuesByShard = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : indexesByShard.entrySet()) {
+            List<String> lines = new ArrayList<>();
+            for (int index : entry.getValue()) {
+                lines.add(requests.get(index).investorId() + ';' + requests.get(index).date());
+            }
+            valuesByShard.put(entry.getKey(), connections.get(entry.getKey()).send(lines));
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<Integer, CompletableFuture<List<BigDecimal>>> entry : valuesByShard.entrySet()) {
+            List<BigDecimal> values;
+            try {
+                values = entry.getValue().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException ioException) {
+                    throw ioException;
+                }
+                failures.add(String.valueOf(e.getCause().getMessage()));
+                continue;
+            }
+            List<Integer> indexes = indexesByShard.get(entry.getKey());
+            for (int i = 0; i < values.size(); i++) {
+                result[indexes.get(i)] = values.get(i);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalArgumentException("Valuation failed: " + String.join("; ", failures));
+        }
+        return List.of(result);
+    }
+
+    @Override
+    public void close() {
+        connections.forEach(WorkerConnection::close);
+        for (Process process : processes) {
+            process.destroy();
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Valuation workers stopped");
+    }
+
+    private static Process startWorker(Path shardDirectory) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "worker", shardDirectory.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static int awaitReady(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(ValuationWorker.READY + ' ')) {
+                return Integer.parseInt(line.substring(ValuationWorker.READY.length() + 1).trim());
+            }
+        }
+        throw new IOException("Worker exited before accepting connections");
+    }
+
+    /**
+     * Valuation request.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     */
+    public record Request(String investorId, LocalDate date) {
+    }
+
+    /**
+     * Connection to a single worker. Batches are written by the callers while a reader thread collects
+     * the responses, so a batch larger than the socket buffers cannot block both sides. The responses come
+     * in the order of the requests and are matched to the pending batches in that order.
+     */
+    static final class WorkerConnection {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final BufferedWriter writer;
+        private final Queue<Batch> pending = new ConcurrentLinkedQueue<>();
+        private volatile IOException failure;
+
+        WorkerConnection(int port) throws IOException {
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            Thread responseReader = new Thread(this::readResponses, "worker-connection-" + port);
+            responseReader.setDaemon(true);
+            responseReader.start();
+        }
+
+        /**
+         * Send a batch of requests, all responses of the batch are read even if some of the requests fail.
+         *
+         * @param lines requests in the worker protocol
+         * @return values in the order of the requests, completed with {@link IllegalArgumentException} listing
+         * the failed requests or with {@link UncheckedIOException} if the connection failed
+         */
+        CompletableFuture<List<BigDecimal>> send(List<String> lines) {
+            Batch batch = new Batch(lines);
+            if (lines.isEmpty()) {
+                batch.result().complete(List.of());
+                return batch.values();
+            }
+            synchronized (writer) {
+                pending.add(batch); // queued before written, so the reader always finds the batch of a response
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                    writer.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            return batch.values();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.warn("Unable to close worker connection", e);
+            }
+        }
+
+        private void readResponses() {
+            try {
+                String response;
+                while ((response = reader.readLine()) != null) {
+                    Batch batch = pending.peek();
+                    if (batch == null) {
+                        throw new IOException("Unexpected response " + response);
+                    }
+                    if (batch.add(response)) {
+                        pending.remove();
+                    }
+                }
+                fail(new IOException("Worker closed the connection"));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Mark the connection broken, pending and further batches fail.
+         */
+        private void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            Batch batch;
+            while ((batch = pending.poll()) != null) {
+                batch.result().completeExceptionally(new UncheckedIOException("Communication with worker failed", e));
+            }
+            close();
+        }
+
+        /**
+         * Requests sent at once with the responses read so far.
+         */
+        private record Batch(List<String> lines, List<String> responses, CompletableFuture<List<String>> result) {
+
+            private Batch(List<String> lines) {
+                this(lines, new ArrayList<>(lines.size()), new CompletableFuture<>());
+            }
+
+            /**
+             * @return true if the response was the last one of the batch
+             */
+            private boolean add(String response) {
+                responses.add(response);
+                if (responses.size() < lines.size()) {
+                    return false;
+                }
+                result.complete(responses);
+                return true;
+            }
+
+            private CompletableFuture<List<BigDecimal>> values() {
+                return result.thenApply(this::parse);
+            }
+
+            private List<BigDecimal> parse(List<String> responses) {
+                List<BigDecimal> values = new ArrayList<>(responses.size());
+                List<String> failures = new ArrayList<>();
+                for (int i = 0; i < responses.size(); i++) {
+                    String response = responses.get(i);
+                    if (response.startsWith("OK ")) {
+                        values.add(new BigDecimal(response.substring(3)));
+                    } else {
+                        failures.add(lines.get(i) + ": " + response);
+                    }
+                }
+                if (!failures.isEmpty()) {
+                    throw new IllegalArgumentException("Valuation of " + String.join(", ", failures) + " failed");
+                }
+                return values;
+            }
+        }
+    }
+}
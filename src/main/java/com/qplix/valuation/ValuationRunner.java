@@ -2,7 +2,27 @@ package com.qplix.valuation;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -11,12 +31,51 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ValuationRunner {
 
+    /**
+     * Value of a fund which is being calculated, reaching such a fund again means it holds itself.
+     */
+    private static final BigDecimal IN_PROGRESS = new BigDecimal("0");
+
     private final QuotesLoader quotesLoader;
     private final InvestmentsLoader investmentsLoader;
     private final TransactionsLoader transactionsLoader;
+    /**
+     * Symbols of the loaded data, replaced by a fresh table on every load (guarded by the lock).
+     */
+    private volatile SymbolTable symbols;
+    private final ScenarioValuator scenarioValuator;
+    private final ChangeValuator changeValuator;
+
+    /**
+     * Valuations hold the read lock, loads and appends hold the write lock, so a valuation never mixes data
+     * of different epochs.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Version of the data (guarded by the lock).
+     */
+    private long epoch;
+    /**
+     * Underlyings lists longer than the threshold are valuated by parallel tasks, 0 means sequential valuation.
+     */
+    private volatile int parallelThreshold;
+    /**
+     * Threads valuating the partitions of {@link #valuateAll(LocalDate, int)}, reused by the following valuations
+     * and released after a minute of idleness.
+     */
+    private final ExecutorService partitionExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "partition-valuation");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public ValuationRunner() {
-        this(new QuotesLoader(), new InvestmentsLoader(), new TransactionsLoader());
+        this(new SymbolTable());
+    }
+
+    private ValuationRunner(SymbolTable symbols) {
+        // all loaders share the symbols, so each identifier is held in memory only once
+        this(new QuotesLoader(symbols), new InvestmentsLoader(symbols), new TransactionsLoader(symbols));
     }
 
     ValuationRunner(
@@ -24,36 +83,427 @@ public class ValuationRunner {
         this.quotesLoader = quotesLoader;
         this.investmentsLoader = investmentsLoader;
         this.transactionsLoader = transactionsLoader;
+        // the trees refer to transactions and quotes by symbols, thus the symbols have to be the same
+        this.symbols = investmentsLoader.symbols();
+        if (quotesLoader.symbols() != symbols || transactionsLoader.symbols() != symbols) {
+            if (quotesLoader.symbols().size() > 0 || investmentsLoader.symbols().size() > 0
+                    || transactionsLoader.symbols().size() > 0) {
+                throw new IllegalArgumentException("Loaders have to share the symbol table");
+            }
+            // loaders created on their own hold nothing yet, the runner owns the table from now on
+            reset(new SymbolTable());
+        }
+        this.scenarioValuator = new ScenarioValuator(quotesLoader, investmentsLoader, transactionsLoader);
+        this.changeValuator = new ChangeValuator(quotesLoader, investmentsLoader, transactionsLoader);
     }
 
     public void load() {
-        quotesLoader.load("/Quotes.csv");
-        investmentsLoader.load("/Investments.csv");
-        transactionsLoader.load("/Transactions.csv");
+        reload(() -> {
+            quotesLoader.load("/Quotes.csv");
+            investmentsLoader.load("/Investments.csv");
+            transactionsLoader.load("/Transactions.csv", investmentId -> true, investmentsLoader.compact());
+        });
+    }
+
+    /**
+     * Load all data from files in given directory (e.g. a shard written by {@link DatasetSharder}).
+     *
+     * @param directory directory containing Quotes.csv, Investments.csv and Transactions.csv
+     */
+    public void load(Path directory) {
+        reload(() -> {
+            quotesLoader.load(directory.resolve(DatasetSharder.QUOTES_FILE).toString());
+            investmentsLoader.load(directory.resolve(DatasetSharder.INVESTMENTS_FILE).toString());
+            transactionsLoader.load(directory.resolve(DatasetSharder.TRANSACTIONS_FILE).toString(),
+                    investmentId -> true, investmentsLoader.compact());
+        });
+    }
+
+    /**
+     * Load only data needed to valuate given investors.
+     * <p>
+     * Investments are loaded first, then only transactions and quotes reachable from the investors through
+     * the fund graph are kept. Other investors are valuated as having no investments.
+     *
+     * @param rootInvestorIds investors which are going to be valuated
+     */
+    public void load(Collection<String> rootInvestorIds) {
+        reload(() -> {
+            investmentsLoader.load("/Investments.csv");
+            Map<String, String> mergedInvestments = investmentsLoader.compact();
+            InvestmentsLoader.Reachability reachable = investmentsLoader.retainReachable(rootInvestorIds);
+            transactionsLoader.load("/Transactions.csv", reachable.investmentIds()::contains, mergedInvestments);
+            quotesLoader.load("/Quotes.csv", reachable.isins()::contains);
+        });
+    }
+
+    /**
+     * Load quotes and investments, transactions are read on demand from a file sorted by investment ID.
+     *
+     * @param sortedTransactions transactions sorted by {@link TransactionsLoader#writeSorted(String, Path)}
+     */
+    public void loadSorted(Path sortedTransactions) {
+        reload(() -> {
+            quotesLoader.load("/Quotes.csv");
+            investmentsLoader.load("/Investments.csv");
+            transactionsLoader.loadSorted(sortedTransactions, 64 * 1024, 256);
+        });
+    }
+
+    /**
+     * Load all data, transactions are kept outside of the heap.
+     *
+     * @param mappedFile file to which the transactions are memory mapped or null to keep them in direct memory
+     */
+    public void loadOffHeap(Path mappedFile) {
+        reload(() -> {
+            quotesLoader.load("/Quotes.csv");
+            investmentsLoader.load("/Investments.csv");
+            transactionsLoader.loadOffHeap("/Transactions.csv", mappedFile, investmentsLoader.compact());
+        });
     }
 
     public BigDecimal valuate(String investorId, LocalDate date) {
+        return valuate(investorId, date, Deadline.NONE);
+    }
+
+    /**
+     * Valuate investor, the valuation stops once the deadline expires.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     * @param deadline   deadline of the valuation
+     * @return value of the investor
+     * @throws java.util.concurrent.CancellationException if the deadline expired or the thread was interrupted
+     */
+    public BigDecimal valuate(String investorId, LocalDate date, Deadline deadline) {
+        // the only lookup of an identifier, the valuation follows the symbols of the tree
+        return read(() -> valuateLocked(investorId, symbols.find(investorId), date, deadline), deadline);
+    }
+
+    /**
+     * Valuate investor and tell which version of the data was valuated.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     * @return value of the investor with the epoch of the valuated data
+     */
+    public EpochValuation valuateWithEpoch(String investorId, LocalDate date) {
+        return read(() -> new EpochValuation(epoch,
+                valuateLocked(investorId, symbols.find(investorId), date, Deadline.NONE)));
+    }
+
+    /**
+     * Version of the data, incremented by every load and append.
+     *
+     * @return current epoch
+     */
+    public long getEpoch() {
+        return read(() -> epoch);
+    }
+
+    private BigDecimal valuateLocked(String investorId, int investorSymbol, LocalDate date, Deadline deadline) {
         log.info("Valuation of {} as of {}", investorId, date);
 
-        InvestmentsLoader.InvestorTree investorTree = investmentsLoader.getInvestorTree(investorId);
+        InvestmentsLoader.InvestorTree investorTree = investmentsLoader.getInvestorTree(investorSymbol);
         if (investorTree == null) {
             log.warn("Investor {} not found", investorId);
             return BigDecimal.ZERO;
         }
 
-        BigDecimal result = investmentValue(date, investorTree);
+        int threshold = parallelThreshold;
+        if (threshold > 0 && !investmentsLoader.isAcyclic(investorSymbol)) {
+            // the tasks of the funds on a cycle would wait for each other forever
+            throw new IllegalStateException("Funds of investor " + investorId + " hold themselves");
+        }
+        BigDecimal result = threshold > 0
+                ? ForkJoinPool.commonPool().invoke(new UnderlyingsTask(
+                        date, investorTree.getUnderlyings(), new ConcurrentHashMap<>(), deadline, threshold))
+                : investmentValue(date, investorTree, new HashMap<>(), deadline);
 
         log.info("Valuation of {} as of {} is {}", investorId, date, result);
         return result;
     }
 
-    private BigDecimal investmentValue(LocalDate date, InvestmentsLoader.InvestorTree investmentTree) {
+    /**
+     * Estimate memory held by the loaded data, including the cache of fund trees grown by the valuations.
+     * The symbol table shared by the loaders is counted once.
+     *
+     * @return footprint of quotes, investments, fund trees, transactions and symbols
+     */
+    public Footprint footprint() {
+        return read(() -> Footprint.of(quotesLoader.footprint(), investmentsLoader.footprint(),
+                transactionsLoader.footprint(), Footprint.of(symbols.footprint())));
+    }
+
+    /**
+     * Valuate single investors by fork/join tasks, e.g. for investors with a wide fan-out of funds. Underlyings
+     * lists longer than the threshold are split in halves and every fund reaching more investments than the threshold
+     * is valuated by its own task shared by all paths reaching the fund. The values are identical to the sequential
+     * valuation.
+     *
+     * @param threshold maximal number of underlyings valuated by a single task, 0 for sequential valuation
+     */
+    public void setParallelThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Parallel threshold must not be negative");
+        }
+        this.parallelThreshold = threshold;
+    }
+
+    /**
+     * Estimate the cost of valuation of given investor, e.g. to route expensive valuations elsewhere.
+     *
+     * @param investorId investor to valuate
+     * @return investors and investments reachable from the investor
+     */
+    public InvestmentsLoader.Cost estimateCost(String investorId) {
+        return estimateCost(investorId, Deadline.NONE);
+    }
+
+    /**
+     * Estimate the cost of valuation of given investor, waiting for a load at most until the deadline.
+     *
+     * @param investorId investor to valuate
+     * @param deadline   deadline of the estimation
+     * @return investors and investments reachable from the investor
+     * @throws java.util.concurrent.CancellationException if the deadline expired
+     */
+    public InvestmentsLoader.Cost estimateCost(String investorId, Deadline deadline) {
+        return read(() -> investmentsLoader.estimateCost(investorId), deadline);
+    }
+
+    /**
+     * Find investments and ISINs the valuation of given investor depends on.
+     *
+     * @param investorId investor to valuate
+     * @return investors, investments and ISINs reachable from the investor
+     */
+    public InvestmentsLoader.Reachability reachable(String investorId) {
+        return read(() -> investmentsLoader.reachable(List.of(investorId)));
+    }
+
+    /**
+     * Append streamed transactions, concurrent valuations see either none or all of them.
+     *
+     * @param transactions transactions to append
+     * @return IDs of the investments with appended transactions
+     */
+    public Set<String> appendTransactions(List<TransactionsLoader.Transaction> transactions) {
+        Set<String> investmentIds = new HashSet<>();
+        update(() -> investmentIds.addAll(transactionsLoader.append(transactions)));
+        return investmentIds;
+    }
+
+    /**
+     * Append streamed quotes, concurrent valuations see either none or all of them.
+     *
+     * @param quotes quotes to append
+     */
+    public void appendQuotes(List<QuotesLoader.Quote> quotes) {
+        update(() -> quotesLoader.append(quotes));
+    }
+
+    /**
+     * Valuate investor under many quote scenarios in a single traversal of its fund graph.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     * @param scenarios  quote scenarios
+     * @return valuations in the order of the scenarios
+     */
+    public List<BigDecimal> valuateScenarios(String investorId, LocalDate date, List<QuoteScenario> scenarios) {
+        return valuateScenarios(investorId, date, scenarios, Deadline.NONE);
+    }
+
+    /**
+     * Valuate investor under many quote scenarios, the valuation stops once the deadline expires.
+     *
+     * @param investorId investor to valuate
+     * @param date       valuation date
+     * @param scenarios  quote scenarios
+     * @param deadline   deadline of the valuation
+     * @return valuations in the order of the scenarios
+     * @throws java.util.concurrent.CancellationException if the deadline expired
+     */
+    public List<BigDecimal> valuateScenarios(String investorId, LocalDate date, List<QuoteScenario> scenarios,
+                                             Deadline deadline) {
+        log.info("Valuation of {} as of {} in {} scenarios", investorId, date, scenarios.size());
+
+        return List.of(read(() -> scenarioValuator.valuate(investorId, date, scenarios, deadline), deadline));
+    }
+
+    /**
+     * Valuate how much the value of investor changed between two dates.
+     *
+     * @param investorId    investor to valuate
+     * @param from          first valuation date
+     * @param to            second valuation date (not before {@code from})
+     * @param contributions maximal number of largest contributing leaves to return
+     * @return the change and its largest contributions
+     */
+    public ValuationChange valuateChange(String investorId, LocalDate from, LocalDate to, int contributions) {
+        return valuateChange(investorId, from, to, contributions, Deadline.NONE);
+    }
+
+    /**
+     * Valuate how much the value of investor changed between two dates, the valuation stops once the deadline
+     * expires.
+     *
+     * @param investorId    investor to valuate
+     * @param from          first valuation date
+     * @param to            second valuation date (not before {@code from})
+     * @param contributions maximal number of largest contributing leaves to return
+     * @param deadline      deadline of the valuation
+     * @return the change and its largest contributions
+     * @throws java.util.concurrent.CancellationException if the deadline expired
+     */
+    public ValuationChange valuateChange(String investorId, LocalDate from, LocalDate to, int contributions,
+                                         Deadline deadline) {
+        log.info("Valuation change of {} between {} and {}", investorId, from, to);
+
+        ValuationChange result =
+                read(() -> changeValuator.valuate(investorId, from, to, contributions, deadline), deadline);
+
+        log.info("Valuation change of {} between {} and {} is {}", investorId, from, to, result.change());
+        return result;
+    }
+
+    /**
+     * Valuate all investors which are not held by any fund, each partition of the fund graph is valuated
+     * by a separate thread and shares the values of its funds among its investors.
+     *
+     * @param date        valuation date
+     * @param parallelism number of threads
+     * @return valuations by investor
+     */
+    public Map<String, BigDecimal> valuateAll(LocalDate date, int parallelism) {
+        // the partitions are valuated by other threads while this one holds the read lock
+        return read(() -> valuateAllLocked(date, parallelism));
+    }
+
+    private Map<String, BigDecimal> valuateAllLocked(LocalDate date, int parallelism) {
+        log.info("Valuation of all investors as of {} using {} threads", date, parallelism);
+
+        // a task per partition, so at most parallelism threads of the shared executor are busy
+        List<InvestmentsLoader.Partition> partitions = investmentsLoader.partition(parallelism);
+        List<Future<Map<String, BigDecimal>>> futures = new ArrayList<>();
+        try {
+            for (InvestmentsLoader.Partition partition : partitions) {
+                futures.add(partitionExecutor.submit(() -> valuatePartition(partition, date)));
+            }
+
+            Map<String, BigDecimal> result = new HashMap<>();
+            for (Future<Map<String, BigDecimal>> future : futures) {
+                result.putAll(future.get());
+            }
+
+            log.info("Valuation of {} investors as of {} finished", result.size(), date);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Valuation of all investors was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Valuation of all investors failed", e.getCause());
+        } finally {
+            // after a failure the remaining partitions are not valuated
+            for (Future<Map<String, BigDecimal>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Run load of the data as an update and report the memory held by the loaded data.
+     * <p>
+     * Every load encodes its data with a fresh symbol table, so identifiers of earlier loads and appends are
+     * dropped with the old table instead of piling up. A failed load leaves the loaders it did not reach empty,
+     * but consistent with the table.
+     * <p>
+     * The footprint walks all loaded structures, so it is computed only when it is logged and after the write lock
+     * is released, under the read lock like any valuation.
+     */
+    private void reload(Runnable load) {
+        update(() -> {
+            reset(new SymbolTable());
+            load.run();
+        });
+        if (log.isInfoEnabled()) {
+            log.info("Loaded data footprint: {}", footprint());
+        }
+    }
+
+    /**
+     * Drop the loaded data and let all loaders encode the following loads with given symbol table.
+     */
+    private void reset(SymbolTable table) {
+        quotesLoader.reset(table);
+        investmentsLoader.reset(table);
+        transactionsLoader.reset(table);
+        symbols = investmentsLoader.symbols();
+    }
+
+    /**
+     * Run action with the data locked against loads and appends.
+     */
+    private <T> T read(Supplier<T> action) {
+        return read(action, Deadline.NONE);
+    }
+
+    /**
+     * Run action with the data locked against loads and appends, waiting for the lock at most until the deadline.
+     */
+    private <T> T read(Supplier<T> action, Deadline deadline) {
+        deadline.lock(lock.readLock());
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Run update of the data while no valuation runs, all valuations see the data either before or after it.
+     */
+    private void update(Runnable update) {
+        lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            epoch++; // even a failed update may have replaced some of the data
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, BigDecimal> valuatePartition(InvestmentsLoader.Partition partition, LocalDate date) {
+        // funds never cross components, so the fund values are local to the partition
+        Map<Integer, BigDecimal> fundValues = new HashMap<>();
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (String investorId : partition.rootInvestorIds()) {
+            result.put(investorId,
+                    investmentValue(date, investmentsLoader.getInvestorTree(investorId), fundValues, Deadline.NONE));
+        }
+        return result;
+    }
+
+    /**
+     * Value of an investor with the epoch of the valuated data.
+     *
+     * @param epoch epoch of the data (see {@link #getEpoch()})
+     * @param value value of the investor
+     */
+    public record EpochValuation(long epoch, BigDecimal value) {
+    }
+
+    private BigDecimal investmentValue(LocalDate date, InvestmentsLoader.InvestorTree investmentTree,
+                                       Map<Integer, BigDecimal> fundValues, Deadline deadline) {
+        deadline.check();
         BigDecimal result = BigDecimal.ZERO;
         for (InvestmentsLoader.InvestmentTree underlying : investmentTree.getUnderlyings()) {
             BigDecimal underlyingValue = switch (underlying.getInvestmentType()) {
                 case Stock -> calculateStockValue(underlying, date);
                 case RealEstate -> calculateRealEstate(underlying, date);
-                case Fonds -> calculateFund(underlying, date);
+                case Fonds -> calculateFund(underlying, date, fundValues, deadline);
             };
 
             if (underlyingValue != null) { // null means no value available
@@ -63,45 +513,170 @@ public class ValuationRunner {
         return result;
     }
 
-    private BigDecimal calculateFund(InvestmentsLoader.InvestmentTree investment, LocalDate date) {
+    private BigDecimal calculateFund(InvestmentsLoader.InvestmentTree investment, LocalDate date,
+                                     Map<Integer, BigDecimal> fundValues, Deadline deadline) {
+        deadline.check();
         // Retrieve basic data and if we have no data available, we early terminate
-        InvestmentsLoader.InvestorTree fundTree = investmentsLoader.getInvestorTree(investment.getAssetId());
-        if (fundTree == null) {
-            log.warn("Fund {} has no investments", investment.getAssetId());
-            return BigDecimal.ZERO;
+        BigDecimal fundValue = fundValues.get(investment.getAssetSymbol());
+        if (fundValue == IN_PROGRESS) {
+            throw new IllegalStateException("Fund " + symbols.name(investment.getAssetSymbol()) + " holds itself");
         }
-        BigDecimal value = transactionsLoader.getValue(investment.getInvestmentId(), date);
+        InvestmentsLoader.InvestorTree fundTree = null;
+        if (fundValue == null) {
+            fundTree = investmentsLoader.getInvestorTree(investment.getAssetSymbol());
+            if (fundTree == null) {
+                log.warn("Fund {} has no investments", symbols.name(investment.getAssetSymbol()));
+                return BigDecimal.ZERO;
+            }
+        }
+        BigDecimal value = transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
         if (value == null || value.compareTo(BigDecimal.ZERO) == 0) {
-            log.warn("Investor has no investment in {}", investment.getAssetId());
+            log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
             return null;
         }
 
-        // Calculate the value of the fund
-        BigDecimal fundValue = investmentValue(date, fundTree);
+        // Calculate the value of the fund once per request, it can be reached by many paths
+        if (fundValue == null) {
+            fundValues.put(investment.getAssetSymbol(), IN_PROGRESS);
+            fundValue = investmentValue(date, fundTree, fundValues, deadline);
+            fundValues.put(investment.getAssetSymbol(), fundValue);
+        }
         if (fundValue == null) {
-            log.warn("Investor's investment into fund {} has no value", investment.getAssetId());
+            log.warn("Investor's investment into fund {} has no value", symbols.name(investment.getAssetSymbol()));
             return null;
         }
 
+        return fundShareValue(value, fundValue);
+    }
+
+    private static BigDecimal fundShareValue(BigDecimal value, BigDecimal fundValue) {
         // Fund value is its value multiplied by total investments (divide by 100, because 100=100%)
         return value.multiply(fundValue).divide(BigDecimal.valueOf(100), RoundingMode.HALF_UP);
     }
 
+    /**
+     * Share of a fund being valuated by a parallel task.
+     */
+    private record FundShare(BigDecimal value, ForkJoinTask<BigDecimal> fund) {
+    }
+
+    /**
+     * Parallel counterpart of {@link ValuationRunner#investmentValue}, values a range of underlyings. Ranges above
+     * the threshold are split in halves, funds reaching more investments than the threshold are forked and the others
+     * are valuated inline. Fund tasks are shared through the map, so every fund is valuated once per request. The sums
+     * are exact, so the order of the additions does not change the result. The fund graph has to be acyclic.
+     */
+    private final class UnderlyingsTask extends RecursiveTask<BigDecimal> {
+
+        private final LocalDate date;
+        private final List<InvestmentsLoader.InvestmentTree> underlyings;
+        private final ConcurrentMap<Integer, ForkJoinTask<BigDecimal>> fundTasks;
+        private final Deadline deadline;
+        private final int threshold;
+
+        private UnderlyingsTask(LocalDate date, List<InvestmentsLoader.InvestmentTree> underlyings,
+                                ConcurrentMap<Integer, ForkJoinTask<BigDecimal>> fundTasks, Deadline deadline,
+                                int threshold) {
+            this.date = date;
+            this.underlyings = underlyings;
+            this.fundTasks = fundTasks;
+            this.deadline = deadline;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected BigDecimal compute() {
+            deadline.check();
+            if (underlyings.size() > threshold) {
+                int middle = underlyings.size() / 2;
+                UnderlyingsTask left = split(0, middle);
+                left.fork();
+                BigDecimal right = split(middle, underlyings.size()).compute();
+                return left.join().add(right);
+            }
+
+            // large funds are forked, their subtrees are valuated while this task values the rest
+            BigDecimal result = BigDecimal.ZERO;
+            List<FundShare> fundShares = new ArrayList<>();
+            for (InvestmentsLoader.InvestmentTree underlying : underlyings) {
+                BigDecimal underlyingValue = switch (underlying.getInvestmentType()) {
+                    case Stock -> calculateStockValue(underlying, date);
+                    case RealEstate -> calculateRealEstate(underlying, date);
+                    case Fonds -> {
+                        FundShare fundShare = fundShare(underlying);
+                        if (fundShare != null) {
+                            fundShares.add(fundShare);
+                        }
+                        yield null;
+                    }
+                };
+
+                if (underlyingValue != null) { // null means no value available
+                    result = result.add(underlyingValue);
+                }
+            }
+            for (FundShare fundShare : fundShares) {
+                result = result.add(fundShareValue(fundShare.value(), fundShare.fund().join()));
+            }
+            return result;
+        }
+
+        private UnderlyingsTask split(int from, int to) {
+            return new UnderlyingsTask(date, underlyings.subList(from, to), fundTasks, deadline, threshold);
+        }
+
+        /**
+         * Same checks as {@link ValuationRunner#calculateFund}, the fund is forked by the first path reaching it.
+         */
+        private FundShare fundShare(InvestmentsLoader.InvestmentTree investment) {
+            deadline.check();
+            ForkJoinTask<BigDecimal> fund = fundTasks.get(investment.getAssetSymbol());
+            InvestmentsLoader.InvestorTree fundTree = null;
+            if (fund == null) {
+                fundTree = investmentsLoader.getInvestorTree(investment.getAssetSymbol());
+                if (fundTree == null) {
+                    log.warn("Fund {} has no investments", symbols.name(investment.getAssetSymbol()));
+                    return null;
+                }
+            }
+            BigDecimal value = transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
+            if (value == null || value.compareTo(BigDecimal.ZERO) == 0) {
+                log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
+                return null;
+            }
+
+            if (fund == null) {
+                UnderlyingsTask task = new UnderlyingsTask(date, fundTree.getUnderlyings(), fundTasks, deadline,
+                        threshold);
+                fund = fundTasks.putIfAbsent(investment.getAssetSymbol(), task);
+                if (fund == null) {
+                    fund = task;
+                    if (investmentsLoader.estimateCost(investment.getAssetSymbol()).investmentCount() > threshold) {
+                        task.fork();
+                    } else {
+                        task.invoke(); // a task of a small fund costs more than it saves
+                    }
+                }
+            }
+            return new FundShare(value, fund);
+        }
+    }
+
     private BigDecimal calculateRealEstate(InvestmentsLoader.InvestmentTree investment, LocalDate date) {
         // the transaction contains absolute value of the real estate, there is no adjustment defined anywhere
-        return transactionsLoader.getValue(investment.getInvestmentId(), date);
+        return transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
     }
 
     private BigDecimal calculateStockValue(InvestmentsLoader.InvestmentTree investment, LocalDate date) {
-        BigDecimal value = transactionsLoader.getValue(investment.getInvestmentId(), date);
-        BigDecimal quote = quotesLoader.getQuote(investment.getAssetId(), date);
+        BigDecimal value = transactionsLoader.getValue(investment.getInvestmentSymbol(), date);
+        BigDecimal quote = quotesLoader.getQuote(investment.getAssetSymbol(), date);
 
         if (value == null || value.compareTo(BigDecimal.ZERO) == 0) {
-            log.warn("Investor has no investment in {}", investment.getAssetId());
+            log.warn("Investor has no investment in {}", symbols.name(investment.getAssetSymbol()));
             return null;
         }
         if (quote == null) {
-            log.warn("Investor has investment without any quote in {}", investment.getAssetId());
+            log.warn("Investor has investment without any quote in {}", symbols.name(investment.getAssetSymbol()));
             return null;
         }
 
@@ -0,0 +1,349 @@
+package com.qplix.valuation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedded HTTP server exposing valuations of {@link ValuationRunner}.
+ * <p>
+ * Endpoints (all responses are plain text, fields are separated by ';' as in the CSV files):
+ * <ul>
+ *     <li>{@code GET /valuation?investorId=X&date=YYYY-MM-DD} - single valuation</li>
+ *     <li>{@code POST /valuation/batch} - body contains {@code investorId;date} lines, one valuation per line</li>
+ *     <li>{@code GET /valuation/series?investorId=X&from=YYYY-MM-DD&to=YYYY-MM-DD} - daily valuations, both dates inclusive</li>
+ *     <li>{@code GET /health} - status and request metrics</li>
+ * </ul>
+ * The number of requests processed at the same time is bounded, requests above the limit are rejected with 503.
+ * <p>
+ * Every request has a deadline, valuations exceeding it are stopped and answered with 504. Single valuations of
+ * investors reaching many investments through their funds (see {@link ValuationRunner#estimateCost(String)}) are
+ * queued to a few background threads with a longer deadline, so they do not occupy the interactive capacity.
+ */
+@Slf4j
+public class ValuationServer implements AutoCloseable {
+
+    /**
+     * Maximal number of days returned by a single time series request.
+     */
+    static final int MAX_SERIES_DAYS = 3660;
+    /**
+     * Number of threads valuating expensive requests.
+     */
+    static final int BACKGROUND_THREADS = 2;
+    /**
+     * Maximal number of expensive requests waiting for a background thread.
+     */
+    static final int BACKGROUND_QUEUE = 64;
+
+    private final ValuationRunner runner;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Duration timeout;
+    private final int expensiveInvestments;
+    private final Duration backgroundTimeout;
+    private final ExecutorService backgroundExecutor;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder expensive = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Create the server with 10 seconds deadline, valuations reaching more than 10000 investments are expensive
+     * and get 100 seconds.
+     *
+     * @param runner      loaded valuation runner
+     * @param address     address to bind to (port 0 picks a free port)
+     * @param maxInFlight maximal number of requests processed at the same time
+     */
+    public ValuationServer(ValuationRunner runner, InetSocketAddress address, int maxInFlight) throws IOException {
+        this(runner, address, maxInFlight, Duration.ofSeconds(10), 10_000, Duration.ofSeconds(100));
+    }
+
+    /**
+     * Create the server, it is not accepting requests until {@link #start()} is called.
+     *
+     * @param runner               loaded valuation runner
+     * @param address              address to bind to (port 0 picks a free port)
+     * @param maxInFlight          maximal number of requests processed at the same time
+     * @param timeout              deadline of a request
+     * @param expensiveInvestments number of reachable investments above which a valuation is valuated in background
+     * @param backgroundTimeout    deadline of an expensive valuation (including the time spent in the queue)
+     */
+    public ValuationServer(ValuationRunner runner, InetSocketAddress address, int maxInFlight, Duration timeout,
+                           int expensiveInvestments, Duration backgroundTimeout) throws IOException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Maximal number of in-flight requests must be positive");
+        }
+        this.runner = runner;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeout = timeout;
+        this.expensiveInvestments = expensiveInvestments;
+        this.backgroundTimeout = backgroundTimeout;
+        this.backgroundExecutor = new ThreadPoolExecutor(BACKGROUND_THREADS, BACKGROUND_THREADS,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(BACKGROUND_QUEUE));
+        this.executor = newThreadPerRequestExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+
+        // expensive single valuations are handed over from the in-flight limit to the background queue
+        this.server.createContext("/valuation", handled(this::handleSingle));
+        this.server.createContext("/valuation/batch", limited(this::handleBatch));
+        this.server.createContext("/valuation/series", limited(this::handleSeries));
+        this.server.createContext("/health", this::handleHealth); // health is never rejected
+    }
+
+    public void start() {
+        server.start();
+        log.info("Valuation server listening on port {} with at most {} requests in flight", getPort(), maxInFlight);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        backgroundExecutor.shutdownNow(); // interrupted valuations stop at their next check
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("Valuation server stopped");
+    }
+
+    private HttpHandler limited(HttpHandler handler) {
+        return handled(exchange -> {
+            acquireInFlight();
+            try {
+                handler.handle(exchange);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private HttpHandler handled(HttpHandler handler) {
+        return exchange -> {
+            try {
+                handler.handle(exchange);
+                served.increment();
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                failed.increment();
+                respond(exchange, 400, e.getMessage());
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                respond(exchange, 503, e.getMessage());
+            } catch (CancellationException e) {
+                timedOut.increment();
+                respond(exchange, 504, e.getMessage());
+            } catch (Exception e) {
+                failed.increment();
+                log.error("Request {} failed", exchange.getRequestURI(), e);
+                respond(exchange, 500, "Internal error");
+            }
+        };
+    }
+
+    private void acquireInFlight() {
+        if (!inFlight.tryAcquire()) {
+            throw new RejectedExecutionException("Too many requests in flight");
+        }
+    }
+
+    private void handleSingle(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> parameters = queryParameters(exchange);
+        String investorId = requiredParameter(parameters, "investorId");
+        LocalDate date = LocalDate.parse(requiredParameter(parameters, "date"));
+
+        // admitted before the cost is estimated, so rejected requests do not wait for a load
+        Deadline deadline = Deadline.after(timeout);
+        BigDecimal result = null;
+        boolean expensiveValuation;
+        acquireInFlight();
+        try {
+            expensiveValuation = runner.estimateCost(investorId, deadline).investmentCount() > expensiveInvestments;
+            if (!expensiveValuation) {
+                result = runner.valuate(investorId, date, deadline);
+            }
+        } finally {
+            inFlight.release();
+        }
+        if (expensiveValuation) {
+            // expensive valuations leave the in-flight limit to the background queue
+            expensive.increment();
+            result = valuateInBackground(investorId, date);
+        }
+
+        respond(exchange, 200, result.toPlainString());
+    }
+
+    private BigDecimal valuateInBackground(String investorId, LocalDate date) {
+        Deadline deadline = Deadline.after(backgroundTimeout);
+        Future<BigDecimal> future = backgroundExecutor.submit(() -> runner.valuate(investorId, date, deadline));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Valuation was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Valuation of " + investorId + " failed", e.getCause());
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Deadline deadline = Deadline.after(timeout);
+
+        StringBuilder response = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] input = line.split(";");
+                if (input.length != 2) {
+                    throw new IllegalArgumentException("Expected 'investorId;date' but got " + line);
+                }
+                String investorId = input[0].trim();
+                LocalDate date = LocalDate.parse(input[1].trim());
+                BigDecimal result = runner.valuate(investorId, date, deadline);
+                response.append(investorId).append(';').append(date).append(';').append(result.toPlainString()).append('\n');
+            }
+        }
+
+        respond(exchange, 200, response.toString());
+    }
+
+    private void handleSeries(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> parameters = queryParameters(exchange);
+        String investorId = requiredParameter(parameters, "investorId");
+        LocalDate from = LocalDate.parse(requiredParameter(parameters, "from"));
+        LocalDate to = LocalDate.parse(requiredParameter(parameters, "to"));
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Parameter 'to' must not be before 'from'");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_SERIES_DAYS) {
+            throw new IllegalArgumentException("At most " + MAX_SERIES_DAYS + " days can be requested");
+        }
+
+        Deadline deadline = Deadline.after(timeout);
+        StringBuilder response = new StringBuilder();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            response.append(date).append(';').append(runner.valuate(investorId, date, deadline).toPlainString())
+                    .append('\n');
+        }
+
+        respond(exchange, 200, response.toString());
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        String response = "status=UP\n"
+                + "inFlight=" + (maxInFlight - inFlight.availablePermits()) + '\n'
+                + "maxInFlight=" + maxInFlight + '\n'
+                + "served=" + served.sum() + '\n'
+                + "rejected=" + rejected.sum() + '\n'
+                + "failed=" + failed.sum() + '\n'
+                + "expensive=" + expensive.sum() + '\n'
+                + "timedOut=" + timedOut.sum() + '\n';
+        respond(exchange, 200, response);
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new IllegalArgumentException("Method " + exchange.getRequestMethod() + " is not supported");
+        }
+    }
+
+    private static String requiredParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Parameter '" + name + "' is missing");
+        }
+        return value;
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(
+                        URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (body == null ? "" : body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Virtual thread per request when the runtime supports it (Java 21+), otherwise a thread per request from
+     * a cached pool. The in-flight limit bounds the number of busy threads in both cases.
+     */
+    private static ExecutorService newThreadPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not available, using platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
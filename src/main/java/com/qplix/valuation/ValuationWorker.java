@@ -0,0 +1,111 @@
+package com.qplix.valuation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Worker serving valuations of a single shard to {@link ValuationCoordinator} over a loopback socket.
+ * <p>
+ * The protocol is line based: the request is {@code investorId;date} and the response is either {@code OK value}
+ * or {@code ERROR message}. Requests of a connection are answered in order, so clients can send a whole batch
+ * before reading the responses.
+ */
+@Slf4j
+public class ValuationWorker implements AutoCloseable {
+
+    /**
+     * Printed to the standard output with the port once the worker accepts connections.
+     */
+    static final String READY = "READY";
+
+    private final ValuationRunner runner;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * Create worker listening on loopback.
+     *
+     * @param runner loaded valuation runner
+     * @param port   port to listen on (0 picks a free port)
+     */
+    public ValuationWorker(ValuationRunner runner, int port) throws IOException {
+        this.runner = runner;
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    public void start() {
+        executor.execute(this::accept);
+        log.info("Valuation worker listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.warn("Unable to close worker socket", e);
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return; // closed
+            } catch (IOException e) {
+                log.warn("Unable to accept connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(handle(line));
+                writer.newLine();
+                if (!reader.ready()) {
+                    writer.flush(); // flush once the pipelined batch is answered
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Connection failed", e);
+        }
+    }
+
+    private String handle(String line) {
+        try {
+            String[] input = line.split(";");
+            if (input.length != 2) {
+                throw new IllegalArgumentException("Expected 'investorId;date' but got " + line);
+            }
+            return "OK " + runner.valuate(input[0], LocalDate.parse(input[1])).toPlainString();
+        } catch (Exception e) {
+            log.warn("Request {} failed", line, e);
+            return "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bytes allocated per operation on generated data sets of fixed shape, a change exceeding a budget allocates more
+ * on the hot path.
+ * <p>
+ * Each budget is the allocation recorded on Temurin 17 with G1 (the {@code RECORDED} constants) times
+ * {@code HEADROOM}, which absorbs JIT, TLAB and JDK differences, so the budgets catch regressions like a copy
+ * per row rather than a few objects more. Loads are also checked per row on a data set of four times the size,
+ * which does not depend on the JDK at all. Re-record the constants when an intended change moves an allocation.
+ */
+class AllocationBudgetTest {
+
+    private static final long SINGLE_VALUATION_RECORDED = 78_000;
+    private static final long FUND_VALUATION_RECORDED = 2_400_000;
+    private static final long TRANSACTION_ROW_RECORDED = 970;
+    private static final long INVESTMENT_ROW_RECORDED = 420;
+    private static final long HEADROOM = 3;
+    /**
+     * Bytes per row may grow by this factor on a four times larger data set, e.g. for resized hash tables.
+     */
+    private static final double ROW_GROWTH = 1.5;
+
+    private static final LocalDate DATE = LocalDate.of(2021, 1, 1);
+    private static final int FUNDS = 30;
+    private static final int INVESTMENTS_PER_INVESTOR = 40;
+    private static final int TRANSACTIONS_PER_INVESTMENT = 10;
+
+    @TempDir
+    static Path tempDir;
+
+    private static ValuationRunner runner;
+    private static Path largeDataSet;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        writeDataSet(tempDir, FUNDS);
+        largeDataSet = writeDataSet(Files.createDirectory(tempDir.resolve("large")), 4 * FUNDS);
+        runner = new ValuationRunner();
+        runner.load(tempDir);
+    }
+
+    @Test
+    void singleValuation() {
+        long allocated = allocatedPerOperation(100, () -> runner.valuate("Investor", DATE));
+
+        assertThat(allocated)
+                .as("Bytes allocated by valuation of investor with stocks and real estates")
+                .isLessThan(SINGLE_VALUATION_RECORDED * HEADROOM);
+    }
+
+    @Test
+    void fundValuation() {
+        long allocated = allocatedPerOperation(20, () -> runner.valuate("FundInvestor", DATE));
+
+        assertThat(allocated)
+                .as("Bytes allocated by valuation of investor holding a graph of funds")
+                .isLessThan(FUND_VALUATION_RECORDED * HEADROOM);
+    }
+
+    @Test
+    void transactionsLoad() {
+        long perRow = allocatedPerTransaction(tempDir);
+        long largePerRow = allocatedPerTransaction(largeDataSet);
+
+        assertThat(perRow)
+                .as("Bytes allocated per loaded transaction")
+                .isLessThan(TRANSACTION_ROW_RECORDED * HEADROOM);
+        assertThat((double) largePerRow)
+                .as("Bytes allocated per transaction of a larger data set")
+                .isLessThan(perRow * ROW_GROWTH);
+    }
+
+    @Test
+    void investmentsLoad() {
+        long perRow = allocatedPerInvestment(tempDir, FUNDS);
+        long largePerRow = allocatedPerInvestment(largeDataSet, 4 * FUNDS);
+
+        assertThat(perRow)
+                .as("Bytes allocated per loaded investment")
+                .isLessThan(INVESTMENT_ROW_RECORDED * HEADROOM);
+        assertThat((double) largePerRow)
+                .as("Bytes allocated per investment of a larger data set")
+                .isLessThan(perRow * ROW_GROWTH);
+    }
+
+    private static long allocatedPerTransaction(Path directory) {
+        TransactionsLoader loader = new TransactionsLoader();
+        String fileName = directory.resolve(DatasetSharder.TRANSACTIONS_FILE).toString();
+        long allocated = allocatedPerOperation(3, () -> loader.load(fileName));
+        return allocated / loader.size();
+    }
+
+    private static long allocatedPerInvestment(Path directory, int funds) {
+        InvestmentsLoader loader = new InvestmentsLoader();
+        String fileName = directory.resolve(DatasetSharder.INVESTMENTS_FILE).toString();
+        long allocated = allocatedPerOperation(3, () -> loader.load(fileName));
+        return allocated / investmentCount(funds);
+    }
+
+    /**
+     * Average bytes allocated by the current thread per operation, measured after the same number of warm-up runs.
+     */
+    private static long allocatedPerOperation(int operations, Runnable operation) {
+        // the allocation counter is an extension of the HotSpot based JDKs
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "Allocated bytes are not available on this JVM");
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+                "Allocated bytes are not measured on this JVM");
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < operations; i++) {
+            operation.run();
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < operations; i++) {
+            operation.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / operations;
+    }
+
+    private static int investmentCount(int funds) {
+        // investor, fund investor and the funds, each fund also holds the next two funds
+        return INVESTMENTS_PER_INVESTOR * (funds + 1) + 2 * (funds - 2) + 2;
+    }
+
+    /**
+     * Investor with stocks and real estates and a fund investor holding the first two of a chain of funds,
+     * every fund holds stocks, real estates and shares of the next two funds.
+     */
+    private static Path writeDataSet(Path directory, int funds) throws IOException {
+        try (BufferedWriter investments = Files.newBufferedWriter(directory.resolve(DatasetSharder.INVESTMENTS_FILE));
+             BufferedWriter transactions = Files.newBufferedWriter(directory.resolve(DatasetSharder.TRANSACTIONS_FILE));
+             BufferedWriter quotes = Files.newBufferedWriter(directory.resolve(DatasetSharder.QUOTES_FILE))) {
+            investments.write("InvestorId;InvestmentId;InvestmentType;ISIN;City;FondsInvestor\n");
+            transactions.write("InvestmentId;Type;Date;Value\n");
+            quotes.write("ISIN;Date;PricePerShare\n");
+
+            for (int isin = 0; isin < INVESTMENTS_PER_INVESTOR; isin++) {
+                for (int day = 0; day < TRANSACTIONS_PER_INVESTMENT; day++) {
+                    quotes.write("ISIN" + isin + ";" + DATE.minusDays(30L * day) + ";" + (10 + isin) + ".25\n");
+                }
+            }
+
+            writeLeafInvestments("Investor", investments, transactions);
+            for (int fund = 0; fund < funds; fund++) {
+                writeLeafInvestments("Fund" + fund, investments, transactions);
+                for (int next = fund + 1; next <= fund + 2 && next < funds; next++) {
+                    writeInvestment("Fund" + fund, "Fund" + fund + "-" + next, "Fonds;;;Fund" + next,
+                            investments, transactions);
+                }
+            }
+            writeInvestment("FundInvestor", "FundInvestor-0", "Fonds;;;Fund0", investments, transactions);
+            writeInvestment("FundInvestor", "FundInvestor-1", "Fonds;;;Fund1", investments, transactions);
+        }
+        return directory;
+    }
+
+    private static void writeLeafInvestments(String investorId, BufferedWriter investments,
+                                             BufferedWriter transactions) throws IOException {
+        for (int i = 0; i < INVESTMENTS_PER_INVESTOR; i++) {
+            String asset = i % 2 == 0 ? "Stock;ISIN" + i + ";;\"\"" : "RealEstate;;City" + i + ";\"\"";
+            writeInvestment(investorId, investorId + "-" + i, asset, investments, transactions);
+        }
+    }
+
+    private static void writeInvestment(String investorId, String investmentId, String asset,
+                                        BufferedWriter investments, BufferedWriter transactions) throws IOException {
+        investments.write(investorId + ";" + investmentId + ";" + asset + "\n");
+        for (int day = 0; day < TRANSACTIONS_PER_INVESTMENT; day++) {
+            transactions.write(investmentId + ";Shares;" + DATE.minusDays(30L * day + 1) + ";1.5\n");
+        }
+    }
+}
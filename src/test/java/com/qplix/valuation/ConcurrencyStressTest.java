@@ -0,0 +1,226 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Valuations running concurrently with reloads and appends, every result must equal the single-threaded
+ * valuation of the data epoch it was computed on.
+ * <p>
+ * The test runs for a fixed wall-clock duration, so it is tagged and runs only with {@code mvn test -Pstress}.
+ */
+@Slf4j
+@Tag("stress")
+class ConcurrencyStressTest {
+
+    private static final Duration DURATION = Duration.ofSeconds(2);
+    private static final int READERS = 8;
+    private static final int INVESTORS = 20;
+    private static final int FUNDS = 5;
+    private static final int STOCKS = 10;
+    private static final List<LocalDate> DATES = List.of(
+            LocalDate.of(2020, 1, 1), LocalDate.of(2020, 6, 1), LocalDate.of(2021, 1, 1));
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void valuationsDuringReloadsAndAppends() throws Exception {
+        List<Path> dataSets = List.of(writeDataSet("A", 1), writeDataSet("B", 3));
+        ValuationRunner runner = new ValuationRunner();
+        ValuationRunner reference = new ValuationRunner();
+        Map<Long, Map<Valuation, BigDecimal>> expected = new ConcurrentHashMap<>();
+        runner.load(dataSets.get(0));
+        reference.load(dataSets.get(0));
+        expected.put(runner.getEpoch(), valuateAll(reference));
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        long end = System.nanoTime() + DURATION.toNanos();
+        try {
+            Future<Integer> writer = executor.submit(() -> write(runner, reference, dataSets, expected, end));
+            List<Future<Results>> readers = new ArrayList<>();
+            for (int i = 0; i < READERS; i++) {
+                readers.add(executor.submit(() -> read(runner, end)));
+            }
+
+            int updates = writer.get();
+            Results results = new Results();
+            for (Future<Results> reader : readers) {
+                results.addAll(reader.get());
+            }
+
+            for (Results.Result result : results.results) {
+                assertThat(expected).containsKey(result.epoch());
+                assertThat(result.value())
+                        .as("Value of %s in epoch %d", result.valuation(), result.epoch())
+                        .isEqualByComparingTo(expected.get(result.epoch()).get(result.valuation()));
+            }
+            assertThat(results.results).isNotEmpty();
+            assertThat(updates).isPositive();
+            report(results, updates);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Alternate reloads of the data sets with appends, the same updates are applied to the reference and
+     * its values are recorded for the new epoch.
+     */
+    private int write(ValuationRunner runner, ValuationRunner reference, List<Path> dataSets,
+                      Map<Long, Map<Valuation, BigDecimal>> expected, long end) {
+        int updates = 0;
+        while (System.nanoTime() < end) {
+            switch (updates % 3) {
+                case 0 -> {
+                    Path dataSet = dataSets.get(updates / 3 % dataSets.size());
+                    runner.load(dataSet);
+                    reference.load(dataSet);
+                }
+                case 1 -> {
+                    String investmentId = "S0-" + updates % INVESTORS;
+                    List<TransactionsLoader.Transaction> transactions = List.of(
+                            new TransactionsLoader.Transaction(investmentId, DATES.get(0), BigDecimal.ONE),
+                            new TransactionsLoader.Transaction("F0-0", DATES.get(1), BigDecimal.TEN));
+                    runner.appendTransactions(transactions);
+                    reference.appendTransactions(transactions);
+                }
+                default -> {
+                    List<QuotesLoader.Quote> quotes = List.of(new QuotesLoader.Quote(
+                            "ISIN" + updates % STOCKS, DATES.get(1), BigDecimal.valueOf(updates, 2)));
+                    runner.appendQuotes(quotes);
+                    reference.appendQuotes(quotes);
+                }
+            }
+            updates++;
+            expected.put(runner.getEpoch(), valuateAll(reference));
+        }
+        return updates;
+    }
+
+    private static Results read(ValuationRunner runner, long end) {
+        Results results = new Results();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            Valuation valuation = new Valuation("Investor" + random.nextInt(INVESTORS),
+                    DATES.get(random.nextInt(DATES.size())));
+            long start = System.nanoTime();
+            ValuationRunner.EpochValuation result = runner.valuateWithEpoch(valuation.investorId(), valuation.date());
+            results.add(valuation, result, System.nanoTime() - start);
+        }
+        return results;
+    }
+
+    private static Map<Valuation, BigDecimal> valuateAll(ValuationRunner runner) {
+        Map<Valuation, BigDecimal> values = new HashMap<>();
+        for (int investor = 0; investor < INVESTORS; investor++) {
+            for (LocalDate date : DATES) {
+                values.put(new Valuation("Investor" + investor, date), runner.valuate("Investor" + investor, date));
+            }
+        }
+        return values;
+    }
+
+    private static void report(Results results, int updates) {
+        long[] latencies = results.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        log.info("{} valuations by {} threads with {} reloads and appends in {} ms: {} valuations/s, "
+                        + "latency p50 {} us, p99 {} us, max {} us",
+                latencies.length, READERS, updates, DURATION.toMillis(),
+                latencies.length * 1000 / DURATION.toMillis(),
+                percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 100));
+    }
+
+    private static long percentile(long[] sortedNanos, int percentile) {
+        int index = Math.max(0, (int) Math.ceil(sortedNanos.length * percentile / 100.0) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sortedNanos[index]);
+    }
+
+    /**
+     * Investors holding stocks, a real estate and a share of a fund, every fund holds stocks and a share
+     * of the next fund. Values are multiplied by the scale so the data sets differ.
+     */
+    private Path writeDataSet(String name, int scale) throws IOException {
+        Path directory = Files.createDirectory(tempDir.resolve(name));
+        try (BufferedWriter investments = Files.newBufferedWriter(directory.resolve(DatasetSharder.INVESTMENTS_FILE));
+             BufferedWriter transactions = Files.newBufferedWriter(directory.resolve(DatasetSharder.TRANSACTIONS_FILE));
+             BufferedWriter quotes = Files.newBufferedWriter(directory.resolve(DatasetSharder.QUOTES_FILE))) {
+            investments.write("InvestorId;InvestmentId;InvestmentType;ISIN;City;FondsInvestor\n");
+            transactions.write("InvestmentId;Type;Date;Value\n");
+            quotes.write("ISIN;Date;PricePerShare\n");
+
+            for (int isin = 0; isin < STOCKS; isin++) {
+                quotes.write("ISIN" + isin + ";2019-12-01;" + scale * (isin + 1) + ".5\n");
+                quotes.write("ISIN" + isin + ";2020-03-01;" + scale * (isin + 2) + "\n");
+            }
+            for (int fund = 0; fund < FUNDS; fund++) {
+                for (int i = 0; i < 3; i++) {
+                    String investmentId = "F" + fund + "-" + i;
+                    investments.write("Fund" + fund + ";" + investmentId + ";Stock;ISIN" + (fund + i) + ";;\"\"\n");
+                    transactions.write(investmentId + ";Shares;2019-11-01;" + scale * 100 + "\n");
+                }
+                if (fund + 1 < FUNDS) {
+                    investments.write("Fund" + fund + ";FF" + fund + ";Fonds;;;Fund" + (fund + 1) + "\n");
+                    transactions.write("FF" + fund + ";Percentage;2019-11-01;" + 10 * scale + "\n");
+                }
+            }
+            for (int investor = 0; investor < INVESTORS; investor++) {
+                investments.write("Investor" + investor + ";S0-" + investor + ";Stock;ISIN" + investor % STOCKS
+                        + ";;\"\"\n");
+                transactions.write("S0-" + investor + ";Shares;2019-11-01;" + scale * (investor + 2) + "\n");
+                transactions.write("S0-" + investor + ";Shares;2020-05-01;-1\n");
+                investments.write("Investor" + investor + ";R-" + investor + ";RealEstate;;City;\"\"\n");
+                transactions.write("R-" + investor + ";Estate;2019-11-01;" + 1000 * scale + "\n");
+                investments.write("Investor" + investor + ";P-" + investor + ";Fonds;;;Fund" + investor % FUNDS
+                        + "\n");
+                transactions.write("P-" + investor + ";Percentage;2019-11-01;" + (investor + 1) + "\n");
+            }
+        }
+        return directory;
+    }
+
+    private record Valuation(String investorId, LocalDate date) {
+    }
+
+    /**
+     * Results and latencies recorded by a reader thread.
+     */
+    private static final class Results {
+
+        private final List<Result> results = new ArrayList<>();
+        private final List<Long> latencies = new ArrayList<>();
+
+        private void add(Valuation valuation, ValuationRunner.EpochValuation result, long latencyNanos) {
+            results.add(new Result(valuation, result.epoch(), result.value()));
+            latencies.add(latencyNanos);
+        }
+
+        private void addAll(Results other) {
+            results.addAll(other.results);
+            latencies.addAll(other.latencies);
+        }
+
+        private record Result(Valuation valuation, long epoch, BigDecimal value) {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatasetSharderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test() throws Exception {
+        List<InvestmentsLoader.Partition> partitions = DatasetSharder.write(
+                "/DatasetSharderTest/Investments.csv",
+                "/DatasetSharderTest/Transactions.csv",
+                "/DatasetSharderTest/Quotes.csv",
+                2, tempDir);
+
+        assertThat(partitions).hasSize(2);
+        Path shard0 = DatasetSharder.shardDirectory(tempDir, 0);
+        Path shard1 = DatasetSharder.shardDirectory(tempDir, 1);
+
+        assertThat(Files.readAllLines(shard0.resolve(DatasetSharder.INVESTMENTS_FILE)))
+                .as("Header and investments of Investor1, Investor2 and Fonds1")
+                .hasSize(5)
+                .first().isEqualTo("InvestorId;InvestmentId;InvestmentType;ISIN;City;FondsInvestor");
+        assertThat(Files.readAllLines(shard1.resolve(DatasetSharder.INVESTMENTS_FILE)))
+                .as("Header and investments of Investor3, Investor4 and Fonds2")
+                .hasSize(5);
+
+        assertThat(Files.readAllLines(shard0.resolve(DatasetSharder.TRANSACTIONS_FILE)))
+                .as("Transactions follow their investments")
+                .containsExactly("InvestmentId;Type;Date;Value",
+                        "I1;Percentage;2020-01-01;10",
+                        "I2;Shares;2020-01-01;5",
+                        "F1;Shares;2020-01-01;100",
+                        "I3;Percentage;2020-01-01;20");
+
+        assertThat(Files.readAllLines(shard0.resolve(DatasetSharder.QUOTES_FILE)))
+                .as("Quotes of held ISINs only")
+                .containsExactly("ISIN;Date;PricePerShare", "ISIN0;2020-01-01;10.5", "ISIN1;2020-01-01;20");
+        assertThat(Files.readAllLines(shard1.resolve(DatasetSharder.QUOTES_FILE)))
+                .as("ISIN0 is held in both shards")
+                .containsExactly("ISIN;Date;PricePerShare", "ISIN0;2020-01-01;10.5");
+    }
+}
@@ -0,0 +1,129 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import org.assertj.core.data.Percentage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FootprintTest {
+
+    private static final int ISINS = 20;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test() {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/ValuationRunnerTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/ValuationRunnerTest/Investments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/ValuationRunnerTest/Transactions.csv");
+        ValuationRunner runner = new ValuationRunner(quotes, investments, transactions);
+
+        Footprint footprint = runner.footprint();
+        assertStructure(footprint, Footprint.QUOTES, 3, 2);
+        assertStructure(footprint, Footprint.INVESTMENTS, 13, 4);
+        assertStructure(footprint, Footprint.INVESTOR_TREES, 0, 0);
+        assertStructure(footprint, Footprint.TRANSACTIONS, 16, 12);
+        assertStructure(footprint, Footprint.SYMBOLS, 19, 19);
+        assertEquals(5, footprint.structures().size(), "Shared symbol table is counted once");
+        assertEquals(0, footprint.offHeapBytes());
+
+        runner.valuate("Investor1", LocalDate.of(2020, 3, 1));
+        Footprint valuated = runner.footprint();
+        assertStructure(valuated, Footprint.INVESTOR_TREES, 3, 1);
+        assertThat(valuated.heapBytes()).isGreaterThan(footprint.heapBytes());
+    }
+
+    @Test
+    void projection() throws IOException {
+        ValuationRunner small = new ValuationRunner();
+        small.load(writeDataSet("small", 500));
+        ValuationRunner large = new ValuationRunner();
+        large.load(writeDataSet("large", 2000));
+        Footprint smallFootprint = small.footprint();
+        Footprint largeFootprint = large.footprint();
+
+        long projected = smallFootprint.projectHeapBytes(Map.of(
+                Footprint.INVESTMENTS, largeFootprint.structure(Footprint.INVESTMENTS).records(),
+                Footprint.TRANSACTIONS, largeFootprint.structure(Footprint.TRANSACTIONS).records(),
+                Footprint.SYMBOLS, largeFootprint.structure(Footprint.SYMBOLS).records()));
+
+        assertThat(largeFootprint.structure(Footprint.QUOTES)).isEqualTo(smallFootprint.structure(Footprint.QUOTES));
+        assertThat(projected)
+                .as("Projection of %s to the size of %s", smallFootprint, largeFootprint)
+                .isCloseTo(largeFootprint.heapBytes(), Percentage.withPercentage(10));
+        assertThatThrownBy(() -> smallFootprint.projectHeapBytes(Map.of("unknown", 1L)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reloadDropsSymbolsOfEarlierLoads() throws IOException {
+        ValuationRunner small = new ValuationRunner();
+        small.load(writeDataSet("small", 500));
+        ValuationRunner reloaded = new ValuationRunner();
+        reloaded.load(writeDataSet("large", 2000));
+        BigDecimal largeValue = reloaded.valuate("Investor1999", LocalDate.of(2020, 12, 31));
+
+        reloaded.load(tempDir.resolve("small"));
+
+        assertThat(reloaded.footprint().structure(Footprint.SYMBOLS))
+                .isEqualTo(small.footprint().structure(Footprint.SYMBOLS));
+        assertThat(largeValue).isPositive();
+        assertThat(reloaded.valuate("Investor1999", LocalDate.of(2020, 12, 31))).isZero();
+        assertThat(reloaded.valuate("Investor499", LocalDate.of(2020, 12, 31)))
+                .isEqualByComparingTo(small.valuate("Investor499", LocalDate.of(2020, 12, 31)));
+    }
+
+    private static void assertStructure(Footprint footprint, String name, long records, long distinctKeys) {
+        Footprint.Structure structure = footprint.structure(name);
+        assertEquals(records, structure.records(), "Records of " + name);
+        assertEquals(distinctKeys, structure.distinctKeys(), "Keys of " + name);
+        assertThat(structure.heapBytes()).as("Heap bytes of " + name).isPositive();
+    }
+
+    /**
+     * Investors holding stocks with a few transactions each, the quotes do not grow with the investors.
+     */
+    private Path writeDataSet(String name, int investors) throws IOException {
+        Path directory = Files.createDirectory(tempDir.resolve(name));
+        try (BufferedWriter investments = Files.newBufferedWriter(directory.resolve(DatasetSharder.INVESTMENTS_FILE));
+             BufferedWriter transactions = Files.newBufferedWriter(directory.resolve(DatasetSharder.TRANSACTIONS_FILE));
+             BufferedWriter quotes = Files.newBufferedWriter(directory.resolve(DatasetSharder.QUOTES_FILE))) {
+            investments.write("InvestorId;InvestmentId;InvestmentType;ISIN;City;FondsInvestor\n");
+            transactions.write("InvestmentId;Type;Date;Value\n");
+            quotes.write("ISIN;Date;PricePerShare\n");
+
+            for (int isin = 0; isin < ISINS; isin++) {
+                for (int month = 1; month <= 12; month++) {
+                    quotes.write("ISIN" + isin + ";" + LocalDate.of(2020, month, 1) + ";" + (isin + month) + ".5\n");
+                }
+            }
+            for (int investor = 0; investor < investors; investor++) {
+                for (int i = 0; i < 5; i++) {
+                    String investmentId = "Investment" + investor + "-" + i;
+                    String isin = "ISIN" + (investor + i) % ISINS;
+                    investments.write("Investor" + investor + ";" + investmentId + ";Stock;" + isin + ";;\"\"\n");
+                    for (int month = 1; month <= 4; month++) {
+                        transactions.write(investmentId + ";Shares;" + LocalDate.of(2020, month, 15) + ";" + month
+                                + "\n");
+                    }
+                }
+            }
+        }
+        return directory;
+    }
+}
@@ -3,6 +3,8 @@ package com.qplix.valuation;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 class InvestmentsLoaderTest {
@@ -11,52 +13,53 @@ class InvestmentsLoaderTest {
     void test() {
         InvestmentsLoader investmentsLoader = new InvestmentsLoader();
         investmentsLoader.load("/InvestmentsLoaderTest/Investments.csv");
+        SymbolTable symbols = investmentsLoader.symbols();
 
         InvestmentsLoader.InvestorTree investor1 = investmentsLoader.getInvestorTree("Investor1");
         assertEquals(4, investor1.getUnderlyings().size(), "Investor1 should have 2 investments");
         assertThat(investor1.getUnderlyings())
                 .as("Investment into ISIN0 expected")
-                .anyMatch(i -> i.getAssetId().equals("ISIN0")
-                        && i.getInvestmentId().equals("I3")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("ISIN0")
+                        && i.getInvestmentSymbol() == symbols.find("I3")
                         && i.getUnderlyings().isEmpty());
         assertThat(investor1.getUnderlyings())
                 .as("Investment into Bratislava expected")
-                .anyMatch(i -> i.getAssetId().equals("Bratislava")
-                        && i.getInvestmentId().equals("I4")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Bratislava")
+                        && i.getInvestmentSymbol() == symbols.find("I4")
                         && i.getUnderlyings().isEmpty());
         assertThat(investor1.getUnderlyings())
                 .as("Investment into Fonds1 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds1")
-                        && i.getInvestmentId().equals("I1")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds1")
+                        && i.getInvestmentSymbol() == symbols.find("I1")
                         && i.getUnderlyings().size() == 2);
         assertThat(investor1.getUnderlyings())
                 .as("Investment into Fonds2 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds2")
-                        && i.getInvestmentId().equals("I2")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds2")
+                        && i.getInvestmentSymbol() == symbols.find("I2")
                         && i.getUnderlyings().size() == 2);
 
         InvestmentsLoader.InvestorTree fonds1 = investmentsLoader.getInvestorTree("Fonds1");
         assertThat(fonds1.getUnderlyings())
                 .as("Investment into Fonds2 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds2")
-                        && i.getInvestmentId().equals("F1")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds2")
+                        && i.getInvestmentSymbol() == symbols.find("F1")
                         && i.getUnderlyings().size() == 2);
         assertThat(fonds1.getUnderlyings())
                 .as("Investment into Fonds3 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds3")
-                        && i.getInvestmentId().equals("F2")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds3")
+                        && i.getInvestmentSymbol() == symbols.find("F2")
                         && i.getUnderlyings().isEmpty());
 
         InvestmentsLoader.InvestorTree fonds2 = investmentsLoader.getInvestorTree("Fonds2");
         assertThat(fonds2.getUnderlyings())
                 .as("Investment into Fonds3 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds3")
-                        && i.getInvestmentId().equals("F3")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds3")
+                        && i.getInvestmentSymbol() == symbols.find("F3")
                         && i.getUnderlyings().isEmpty());
         assertThat(fonds2.getUnderlyings())
                 .as("Investment into Fonds4 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds4")
-                        && i.getInvestmentId().equals("F4")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds4")
+                        && i.getInvestmentSymbol() == symbols.find("F4")
                         && i.getUnderlyings().size() == 1);
 
         InvestmentsLoader.InvestorTree fonds3 = investmentsLoader.getInvestorTree("Fonds3");
@@ -67,8 +70,8 @@ class InvestmentsLoaderTest {
         InvestmentsLoader.InvestorTree fonds4 = investmentsLoader.getInvestorTree("Fonds4");
         assertThat(fonds4.getUnderlyings())
                 .as("Investment into Fonds2 expected")
-                .anyMatch(i -> i.getAssetId().equals("Fonds2")
-                        && i.getInvestmentId().equals("F5")
+                .anyMatch(i -> i.getAssetSymbol() == symbols.find("Fonds2")
+                        && i.getInvestmentSymbol() == symbols.find("F5")
                         && i.getUnderlyings().size() == 2);
 
         InvestmentsLoader.InvestorTree fonds5 = investmentsLoader.getInvestorTree("Fonds5");
@@ -76,4 +79,109 @@ class InvestmentsLoaderTest {
                 .as("No investments expected")
                 .isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void retainReachable() {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load("/InvestmentsLoaderTest/Investments.csv");
+
+        InvestmentsLoader.Reachability reachability = investmentsLoader.retainReachable(List.of("Fonds2", "Unknown"));
+
+        assertThat(reachability.investorIds()).containsExactlyInAnyOrder("Fonds2", "Fonds4");
+        assertThat(reachability.investmentIds()).containsExactlyInAnyOrder("F3", "F4", "F5");
+        assertThat(reachability.isins()).isEmpty();
+        assertThat(investmentsLoader.getInvestorTree("Fonds2").getUnderlyings())
+                .as("Retained investor keeps its investments")
+                .hasSize(2);
+        assertThat(investmentsLoader.getInvestorTree("Investor1").getUnderlyings())
+                .as("Investor not reachable from the roots is dropped")
+                .isEmpty();
+
+        InvestmentsLoader.Reachability investor1 = investmentsLoader.retainReachable(List.of("Investor1"));
+        assertThat(investor1.investorIds())
+                .as("Reachability is computed from the retained investments only")
+                .isEmpty();
+
+        investmentsLoader.load("/InvestmentsLoaderTest/Investments.csv");
+        investor1 = investmentsLoader.retainReachable(List.of("Investor1"));
+        assertThat(investor1.investorIds()).containsExactlyInAnyOrder("Investor1", "Fonds1", "Fonds2", "Fonds4");
+        assertThat(investor1.investmentIds()).containsExactlyInAnyOrder("I1", "I2", "I3", "I4", "F1", "F2", "F3", "F4", "F5");
+        assertThat(investor1.isins()).containsExactly("ISIN0");
+    }
+
+    @Test
+    void components() {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load("/DatasetSharderTest/Investments.csv");
+
+        List<InvestmentsLoader.Component> components = investmentsLoader.getComponents();
+
+        assertThat(components).hasSize(3);
+        assertThat(components.get(0).investorIds()).containsExactlyInAnyOrder("Investor1", "Investor2", "Fonds1");
+        assertThat(components.get(0).rootInvestorIds()).containsExactlyInAnyOrder("Investor1", "Investor2");
+        assertEquals(4, components.get(0).investmentCount(), "The largest component is the first one");
+        assertThat(components)
+                .anyMatch(c -> c.investorIds().equals(List.of("Investor3")) && c.investmentCount() == 2)
+                .anyMatch(c -> c.rootInvestorIds().equals(List.of("Investor4")) && c.investorIds().contains("Fonds2"));
+        assertThat(investmentsLoader.getComponents()).as("Components are cached").isSameAs(components);
+
+        InvestmentsLoader.Component investor3 =
+                components.stream().filter(c -> c.investorIds().contains("Investor3")).findFirst().orElseThrow();
+        investmentsLoader.retainReachable(List.of("Investor3"));
+        assertThat(investmentsLoader.getComponents())
+                .as("Components follow the retained investments")
+                .containsExactly(investor3);
+    }
+
+    @Test
+    void partition() {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load("/DatasetSharderTest/Investments.csv");
+
+        List<InvestmentsLoader.Partition> partitions = investmentsLoader.partition(2);
+
+        assertThat(partitions).hasSize(2);
+        assertThat(partitions.get(0).rootInvestorIds()).containsExactlyInAnyOrder("Investor1", "Investor2");
+        assertThat(partitions.get(1).rootInvestorIds()).containsExactlyInAnyOrder("Investor3", "Investor4");
+        assertEquals(4, partitions.get(0).investmentCount(), "Partitions are balanced by investments");
+        assertEquals(4, partitions.get(1).investmentCount(), "Partitions are balanced by investments");
+        assertThat(investmentsLoader.partition(5))
+                .as("Partitions without components are empty")
+                .filteredOn(p -> p.investorIds().isEmpty())
+                .hasSize(2);
+    }
+
+    @Test
+    void compact() {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load("/ValuationRunnerTest/Investments.csv");
+
+        Map<String, String> mergedInvestments = investmentsLoader.compact();
+        SymbolTable symbols = investmentsLoader.symbols();
+
+        assertThat(mergedInvestments)
+                .as("Fund investments and shared investment IDs are not merged")
+                .containsExactlyInAnyOrderEntriesOf(Map.of("S2", "S1", "R2", "R1", "G2", "G1"));
+        assertThat(investmentsLoader.getInvestorTree("Investor1").getUnderlyings())
+                .extracting(i -> symbols.name(i.getInvestmentSymbol()))
+                .containsExactly("S1", "R1", "F1", "F2", "S3");
+        assertThat(investmentsLoader.getInvestorTree("Investor2").getUnderlyings())
+                .extracting(i -> symbols.name(i.getInvestmentSymbol()))
+                .containsExactly("X1", "X2");
+    }
+
+    @Test
+    void estimateCost() {
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader();
+        investmentsLoader.load("/InvestmentsLoaderTest/Investments.csv");
+
+        assertEquals(new InvestmentsLoader.Cost(4, 9), investmentsLoader.estimateCost("Investor1"),
+                "Shared and cyclic funds are counted once, Fonds3 has no investments");
+        assertEquals(new InvestmentsLoader.Cost(2, 3), investmentsLoader.estimateCost("Fonds4"));
+        assertEquals(new InvestmentsLoader.Cost(0, 0), investmentsLoader.estimateCost("Unknown"));
+
+        investmentsLoader.retainReachable(List.of("Fonds4"));
+        assertEquals(new InvestmentsLoader.Cost(0, 0), investmentsLoader.estimateCost("Investor1"),
+                "Cached costs are dropped when the investments change");
+    }
+}
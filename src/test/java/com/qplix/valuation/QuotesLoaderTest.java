@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 class QuotesLoaderTest {
@@ -28,4 +29,29 @@ class QuotesLoaderTest {
         assertEquals(BigDecimal.valueOf(299.462), quotesLoader.getQuote("ISIN1", LocalDate.of(2016, 6, 8)), "There is value for 2016-06-7");
         assertEquals(BigDecimal.valueOf(300.841), quotesLoader.getQuote("ISIN1", LocalDate.of(2016, 6, 9)), "There is value for 2016-06-8");
     }
-}
\ No newline at end of file
+
+    @Test
+    void filtered() {
+        QuotesLoader quotesLoader = new QuotesLoader();
+        quotesLoader.load("/QuotesLoaderTest/Quotes.csv", "ISIN1"::equals);
+
+        assertEquals(3, quotesLoader.size(), "Only quotes of ISIN1 are kept");
+        assertNull(quotesLoader.getQuote("ISIN0", LocalDate.of(2025, 3, 25)), "Quotes of ISIN0 are skipped");
+        assertEquals(BigDecimal.valueOf(300.841), quotesLoader.getQuote("ISIN1", LocalDate.of(2016, 6, 9)), "There is value for 2016-06-8");
+    }
+
+    @Test
+    void append() {
+        QuotesLoader quotesLoader = new QuotesLoader();
+        quotesLoader.load("/QuotesLoaderTest/Quotes.csv");
+
+        quotesLoader.append(List.of(
+                new QuotesLoader.Quote("ISIN1", LocalDate.of(2016, 6, 8), BigDecimal.valueOf(301)),
+                new QuotesLoader.Quote("ISIN2", LocalDate.of(2020, 1, 1), BigDecimal.TEN)));
+
+        assertEquals(7, quotesLoader.size(), "Quote of the same ISIN and date is replaced");
+        assertEquals(BigDecimal.valueOf(301), quotesLoader.getQuote("ISIN1", LocalDate.of(2016, 6, 9)), "Replaced quote");
+        assertEquals(BigDecimal.valueOf(299.462), quotesLoader.getQuote("ISIN1", LocalDate.of(2016, 6, 8)), "Other quotes are kept");
+        assertEquals(BigDecimal.TEN, quotesLoader.getQuote("ISIN2", LocalDate.of(2020, 1, 2)), "Quote of a new ISIN");
+    }
+}
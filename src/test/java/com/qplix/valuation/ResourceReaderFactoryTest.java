@@ -0,0 +1,128 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceReaderFactoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compressedInputs() throws Exception {
+        Path quotes = gzip("/DatasetSharderTest/Quotes.csv");
+        Path investments = gzip("/DatasetSharderTest/Investments.csv");
+        Path transactions = gzip("/DatasetSharderTest/Transactions.csv");
+
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotesLoader = new QuotesLoader(symbols);
+        quotesLoader.load(quotes.toString());
+        InvestmentsLoader investmentsLoader = new InvestmentsLoader(symbols);
+        investmentsLoader.load(investments.toString());
+        TransactionsLoader transactionsLoader = new TransactionsLoader(symbols);
+        transactionsLoader.load(transactions.toString());
+
+        assertEquals(3, quotesLoader.size());
+        assertEquals(8, transactionsLoader.size());
+        BigDecimal value = new ValuationRunner(quotesLoader, investmentsLoader, transactionsLoader)
+                .valuate("Investor1", LocalDate.of(2020, 1, 2));
+        assertThat(value).isEqualByComparingTo("252.5");
+    }
+
+    @Test
+    void compressedInputLargerThanBuffer() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            lines.add("Investment" + i + ";Shares;2020-01-01;" + i);
+        }
+        Path file = tempDir.resolve("Large.csv.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+            writer.write(String.join("\n", lines));
+        }
+
+        try (BufferedReader reader = ResourceReaderFactory.resourceFileReader(file.toString())) {
+            assertEquals(lines, reader.lines().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void corruptedCompressedInput() throws Exception {
+        Path file = tempDir.resolve("Corrupted.csv.gz");
+        Files.write(file, "not compressed".getBytes(StandardCharsets.UTF_8));
+
+        try (BufferedReader reader = ResourceReaderFactory.resourceFileReader(file.toString())) {
+            assertThrows(IOException.class, reader::readLine);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new QuotesLoader().load(file.toString()));
+    }
+
+    @Test
+    void truncatedCompressedInput() throws Exception {
+        Path file = tempDir.resolve("Truncated.csv.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 200_000; i++) {
+                writer.write("Investment" + i + ";Shares;2020-01-01;" + i + "\n");
+            }
+        }
+        byte[] compressed = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (BufferedReader reader = ResourceReaderFactory.resourceFileReader(file.toString())) {
+                assertThrows(UncheckedIOException.class, () -> reader.lines().count());
+            }
+            assertThrows(IllegalArgumentException.class, () -> new TransactionsLoader().load(file.toString()));
+        });
+    }
+
+    @Test
+    void failingCompressedInput() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("Storage failed");
+            }
+        };
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (InputStream input = new DecompressingInputStream(failing, "failing")) {
+                IOException e = assertThrows(IOException.class, input::read);
+                assertThat(e).hasRootCauseInstanceOf(IllegalStateException.class);
+            }
+        });
+    }
+
+    private Path gzip(String resource) throws IOException {
+        Path target = tempDir.resolve(Path.of(resource).getFileName() + ResourceReaderFactory.GZIP_SUFFIX);
+        try (InputStream input = ResourceReaderFactoryTest.class.getResourceAsStream(resource);
+             OutputStream output = new GZIPOutputStream(Files.newOutputStream(target))) {
+            input.transferTo(output);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,131 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingValuationTest {
+
+    private static final LocalDate DATE = LocalDate.of(2020, 1, 2);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/DatasetSharderTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/DatasetSharderTest/Investments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/DatasetSharderTest/Transactions.csv");
+        ValuationRunner runner = new ValuationRunner(quotes, investments, transactions);
+
+        Path transactionsFile = tempDir.resolve("Transactions.csv");
+        Files.writeString(transactionsFile, "InvestmentId;Type;Date;Value\nI2;Shares;2019-12-01;100\n");
+
+        try (StreamingValuation streaming =
+                     new StreamingValuation(runner, List.of("Investor1", "Investor2", "Investor3"), DATE, 100)) {
+            BlockingQueue<StreamingValuation.Update> updates = subscribe(streaming);
+            streaming.tail(transactionsFile, StreamingValuation.RecordType.Transaction);
+
+            // 5 more shares of ISIN0 for Investor1, the existing line is not applied again, quoted values may
+            // contain the delimiter
+            Files.writeString(transactionsFile, "I2;\"Shares; bought\";\"2020-01-01\";5\n", StandardOpenOption.APPEND);
+            StreamingValuation.Update update = updates.poll(10, TimeUnit.SECONDS);
+            assertNotNull(update, "Appended transaction updates the value");
+            assertEquals("Investor1", update.investorId());
+            assertThat(update.value()).isEqualByComparingTo("305");
+
+            // ISIN1 held by Fonds1 goes from 20 to 30, both investors of the fund are updated
+            String stream = "ISIN;Date;PricePerShare\nnot a quote\n\"ISIN1;\n\"ISIN1\";2020-01-01;30\n";
+            streaming.read(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)),
+                    StreamingValuation.RecordType.Quote);
+            Map<String, BigDecimal> values = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                update = updates.poll(10, TimeUnit.SECONDS);
+                assertNotNull(update, "Streamed quote updates the investors of the fund");
+                values.put(update.investorId(), update.value());
+            }
+            assertThat(values.get("Investor1")).isEqualByComparingTo("405");
+            assertThat(values.get("Investor2")).isEqualByComparingTo("600");
+            assertThat(updates.poll(100, TimeUnit.MILLISECONDS))
+                    .as("Investor3 does not hold ISIN1")
+                    .isNull();
+        }
+    }
+
+    @Test
+    void streamLargerThanQueue() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/DatasetSharderTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/DatasetSharderTest/Investments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/DatasetSharderTest/Transactions.csv");
+        ValuationRunner runner = new ValuationRunner(quotes, investments, transactions);
+
+        // the reader waits for the valuation of every single record, none of them is lost
+        StringBuilder stream = new StringBuilder("ISIN;Date;PricePerShare\n");
+        for (int i = 0; i < 1000; i++) {
+            stream.append("ISIN1;2020-01-01;").append(1000 + i).append('\n');
+        }
+        stream.append("ISIN1;2020-01-01;30\n");
+
+        try (StreamingValuation streaming = new StreamingValuation(runner, List.of("Investor2"), DATE, 1)) {
+            BlockingQueue<StreamingValuation.Update> updates = subscribe(streaming);
+            streaming.read(new ByteArrayInputStream(stream.toString().getBytes(StandardCharsets.UTF_8)),
+                    StreamingValuation.RecordType.Quote);
+
+            StreamingValuation.Update update;
+            do {
+                update = updates.poll(10, TimeUnit.SECONDS);
+                assertNotNull(update, "Every streamed quote is applied");
+            } while (update.value().compareTo(new BigDecimal("600")) != 0);
+            assertThat(quotes.getQuote("ISIN1", DATE)).isEqualByComparingTo("30");
+        }
+    }
+
+    private static BlockingQueue<StreamingValuation.Update> subscribe(StreamingValuation streaming) {
+        BlockingQueue<StreamingValuation.Update> updates = new LinkedBlockingQueue<>();
+        streaming.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(StreamingValuation.Update item) {
+                updates.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return updates;
+    }
+}
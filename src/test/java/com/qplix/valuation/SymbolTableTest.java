@@ -0,0 +1,39 @@
+package com.qplix.valuation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolTableTest {
+
+    @Test
+    void test() {
+        SymbolTable symbols = new SymbolTable();
+
+        int investor = symbols.intern("Investor1");
+        int isin = symbols.intern("ISIN0");
+
+        assertEquals(0, investor, "Symbols are dense and start at 0");
+        assertEquals(1, isin, "Symbols are dense and start at 0");
+        assertEquals(investor, symbols.intern(new String("Investor1")), "Same identifier has the same symbol");
+        assertEquals(investor, symbols.find("Investor1"));
+        assertEquals(SymbolTable.UNKNOWN, symbols.find("Investor2"), "Find does not create symbols");
+        assertEquals(2, symbols.size());
+        assertSame(symbols.name(investor), symbols.name(symbols.intern("Investor1")), "Identifier is held only once");
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        SymbolTable symbols = new SymbolTable();
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.intern("Investment" + i));
+        }
+
+        assertEquals("Investment4321", symbols.name(4321));
+        assertNotEquals(SymbolTable.UNKNOWN, symbols.find("Investment4999"));
+        assertEquals(5000, symbols.size());
+    }
+}
@@ -2,22 +2,308 @@ package com.qplix.valuation;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class TransactionsLoaderTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void test() {
         TransactionsLoader transactionsLoader = new TransactionsLoader();
         transactionsLoader.load("/TransactionsLoaderTest/Transactions.csv");
 
         assertEquals(4, transactionsLoader.size(), "There should be 4 transactions");
+        assertTransactions(transactionsLoader);
+    }
+
+    @Test
+    void change() {
+        TransactionsLoader heap = new TransactionsLoader();
+        heap.load("/TransactionsLoaderTest/Transactions.csv");
+        TransactionsLoader offHeap = new TransactionsLoader();
+        offHeap.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", null);
+
+        for (TransactionsLoader transactionsLoader : new TransactionsLoader[]{heap, offHeap}) {
+            assertEquals(BigDecimal.valueOf(27.2), transactionsLoader.getChange("Investment1", LocalDate.of(2016, 1, 4), LocalDate.of(2020, 1, 16)), "Transactions of 2018-01-12 and 2020-01-15");
+            assertEquals(BigDecimal.valueOf(15.1), transactionsLoader.getChange("Investment1", LocalDate.of(2016, 1, 4), LocalDate.of(2020, 1, 15)), "Transactions of 2018-01-12, 'to' is exclusive");
+            assertEquals(0, BigDecimal.ZERO.compareTo(transactionsLoader.getChange("Investment2", LocalDate.of(2016, 1, 16), LocalDate.of(2020, 1, 1))), "No transactions in the period");
+            assertEquals(BigDecimal.ZERO, transactionsLoader.getChange("Investment3", LocalDate.of(2016, 1, 16), LocalDate.of(2020, 1, 1)), "Unknown investment");
+        }
+    }
+
+    @Test
+    void filtered() {
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.load("/TransactionsLoaderTest/Transactions.csv", "Investment2"::equals);
+
+        assertEquals(1, transactionsLoader.size(), "Only transactions of Investment2 are kept");
+        assertEquals(BigDecimal.ZERO, transactionsLoader.getValue("Investment1", LocalDate.of(2020, 1 ,16)), "Investment1 is skipped");
+        assertEquals(BigDecimal.valueOf(13.1), transactionsLoader.getValue("Investment2", LocalDate.of(2016, 1 ,16)), "Investment2 has transactions on 2016-01-15");
+    }
+
+    @Test
+    void offHeap() {
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", null);
+
+        assertEquals(4, transactionsLoader.size(), "There should be 4 transactions");
+        assertTransactions(transactionsLoader);
+    }
+
+    @Test
+    void offHeapMappedFile() {
+        Path mappedFile = tempDir.resolve("transactions.bin");
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", mappedFile);
+
+        assertTrue(Files.exists(mappedFile), "Transactions should be mapped to the file");
+        assertEquals(4, transactionsLoader.size(), "There should be 4 transactions");
+        assertTransactions(transactionsLoader);
+    }
+
+    @Test
+    void offHeapStagedInChunks() {
+        SymbolTable symbols = new SymbolTable();
+        int[] investments = {
+                symbols.intern("Investment3"), symbols.intern("Investment1"), symbols.intern("Investment2")};
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (Path mappedFile : new Path[]{null, tempDir.resolve("staged.bin")}) {
+            TransactionStore store;
+            try (OffHeapTransactionStore.Builder builder = new OffHeapTransactionStore.Builder(symbols, mappedFile)) {
+                // more transactions than a staging chunk holds, newest first
+                for (int i = 100_000; i > 0; i--) {
+                    builder.add(investments[i % 3], start.plusDays(i), BigDecimal.valueOf(i, 2));
+                }
+                store = builder.build();
+            }
+
+            try (store) {
+                assertEquals(100_000, store.size());
+                assertEquals(new BigDecimal("16667166.67"), store.getValue("Investment1", start.plusDays(100_001)));
+                assertEquals(new BigDecimal("0.02"), store.getValue("Investment2", start.plusDays(3)));
+                assertEquals(BigDecimal.ZERO, store.getValue("Investment3", start.plusDays(3)), "Day 3 is exclusive");
+            }
+        }
+        assertEquals(List.of(tempDir.resolve("staged.bin")), listFiles(tempDir), "Staged transactions are deleted");
+    }
+
+    @Test
+    void offHeapClose() {
+        SymbolTable symbols = new SymbolTable();
+        OffHeapTransactionStore.Builder builder = new OffHeapTransactionStore.Builder(symbols, null);
+        builder.add(symbols.intern("Investment1"), LocalDate.of(2020, 1, 1), BigDecimal.ONE);
+        TransactionStore store = builder.build();
+        assertEquals(BigDecimal.ONE, store.getValue("Investment1", LocalDate.of(2020, 1, 2)));
+
+        store.close();
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.getValue("Investment1", LocalDate.of(2020, 1, 2)),
+                "Released store cannot be read");
+    }
+
+    @Test
+    void offHeapReloadDuringReads() throws Exception {
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", null);
+        AtomicBoolean loading = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (loading.get()) {
+                        assertTransactions(transactionsLoader);
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+
+            // every reload releases the buffers of the replaced store while the readers may still use them
+            for (int i = 0; i < 200; i++) {
+                transactionsLoader.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", null);
+            }
+            loading.set(false);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void offHeapMatchesHeapForUnsortedFile() {
+        TransactionsLoader heap = new TransactionsLoader();
+        heap.load("/TransactionsLoaderTest/TransactionsUnsorted.csv");
+        TransactionsLoader offHeap = new TransactionsLoader();
+        offHeap.loadOffHeap("/TransactionsLoaderTest/TransactionsUnsorted.csv", null);
+
+        for (LocalDate date = LocalDate.of(2016, 1, 1); date.isBefore(LocalDate.of(2020, 2, 1)); date = date.plusDays(7)) {
+            assertEquals(heap.getValue("Investment1", date), offHeap.getValue("Investment1", date), "Investment1 as of " + date);
+            assertEquals(heap.getValue("Investment2", date), offHeap.getValue("Investment2", date), "Investment2 as of " + date);
+        }
+        assertEquals(new BigDecimal("37.20"), offHeap.getValue("Investment1", LocalDate.of(2020, 1, 16)));
+        assertEquals(BigDecimal.ZERO, offHeap.getValue("Investment3", LocalDate.of(2020, 1, 16)), "Unknown investment has no value");
+    }
+
+    @Test
+    void sortedFile() {
+        Path sortedFile = tempDir.resolve("sorted.csv");
+        TransactionsLoader.writeSorted("/TransactionsLoaderTest/Transactions.csv", sortedFile);
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.loadSorted(sortedFile, 64 * 1024, 4);
+
+        assertEquals(4, transactionsLoader.size(), "There should be 4 transactions");
+        assertTransactions(transactionsLoader);
+    }
+
+    @Test
+    void sortedFileMatchesHeapForAnyBlockSize() {
+        Path sortedFile = tempDir.resolve("sorted.csv");
+        TransactionsLoader.writeSorted("/TransactionsLoaderTest/TransactionsUnsorted.csv", sortedFile);
+        TransactionsLoader heap = new TransactionsLoader();
+        heap.load("/TransactionsLoaderTest/TransactionsUnsorted.csv");
+
+        for (int blockSize : new int[]{1, 40, 80, 4096}) {
+            TransactionsLoader sorted = new TransactionsLoader();
+            sorted.loadSorted(sortedFile, blockSize, 1);
+
+            for (LocalDate date = LocalDate.of(2016, 1, 1); date.isBefore(LocalDate.of(2020, 2, 1)); date = date.plusDays(7)) {
+                assertEquals(heap.getValue("Investment1", date), sorted.getValue("Investment1", date), "Investment1 as of " + date);
+                assertEquals(heap.getValue("Investment2", date), sorted.getValue("Investment2", date), "Investment2 as of " + date);
+            }
+            assertEquals(BigDecimal.ZERO, sorted.getValue("Investment0", LocalDate.of(2020, 1, 16)), "Unknown investment has no value");
+            assertEquals(BigDecimal.ZERO, sorted.getValue("Investment3", LocalDate.of(2020, 1, 16)), "Unknown investment has no value");
+        }
+    }
+
+    @Test
+    void sortedFileOfManyRunsWithQuotedValues() throws Exception {
+        Path unsortedFile = tempDir.resolve("unsorted.csv");
+        Files.writeString(unsortedFile, "InvestmentId;Type;Date;Value\n"
+                + "Investment2;\"Percentage; bought\";2016-01-15;13.1\n"
+                + "\"Investment;1\";Percentage;2020-01-15;12.1\n"
+                + "Investment1;Percentage;2016-01-03;10.2\n"
+                + "\"Investment;1\";\"Percentage; sold\";2016-01-03;-0.2\n"
+                + "Investment2;Percentage;2018-01-12;15.10\n");
+        Path sortedFile = tempDir.resolve("sorted.csv");
+        TransactionsLoader.writeSorted(unsortedFile.toString(), sortedFile, 2);
+        TransactionsLoader heap = new TransactionsLoader();
+        heap.load(unsortedFile.toString());
+
+        for (int blockSize : new int[]{1, 4096}) {
+            TransactionsLoader sorted = new TransactionsLoader();
+            sorted.loadSorted(sortedFile, blockSize, 1);
+
+            assertEquals(5, sorted.size());
+            for (String investmentId : new String[]{"Investment;1", "Investment1", "Investment2"}) {
+                for (LocalDate date = LocalDate.of(2016, 1, 1); date.isBefore(LocalDate.of(2020, 2, 1)); date = date.plusDays(7)) {
+                    assertEquals(heap.getValue(investmentId, date), sorted.getValue(investmentId, date), investmentId + " as of " + date);
+                }
+            }
+        }
+        assertEquals(new BigDecimal("11.9"), heap.getValue("Investment;1", LocalDate.of(2020, 1, 16)));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(2, files.count(), "Sorted runs are deleted");
+        }
+    }
+
+    @Test
+    void unsortedFileIsRejected() throws Exception {
+        Path unsortedFile = tempDir.resolve("unsorted.csv");
+        Files.writeString(unsortedFile, "InvestmentId;Type;Date;Value\nInvestment2;Percentage;2016-01-15;13.1\nInvestment1;Percentage;2016-01-03;10.2\n");
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+
+        assertThrows(IllegalArgumentException.class, () -> transactionsLoader.loadSorted(unsortedFile, 1024, 1));
+    }
+
+    @Test
+    void invalidFileIsRejected() throws Exception {
+        Path invalidFile = tempDir.resolve("invalid.csv");
+        Files.writeString(invalidFile, "InvestmentId;Type;Date;Value\nInvestment1;Percentage;2016-01-03;ten\n");
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> transactionsLoader.load(invalidFile.toString()));
+        assertEquals("Unable to load transactions from file " + invalidFile, e.getMessage());
+    }
+
+    @Test
+    void footprint() {
+        Path sortedFile = tempDir.resolve("sorted.csv");
+        TransactionsLoader.writeSorted("/TransactionsLoaderTest/TransactionsUnsorted.csv", sortedFile);
+        TransactionsLoader heap = new TransactionsLoader();
+        heap.load("/TransactionsLoaderTest/TransactionsUnsorted.csv");
+        TransactionsLoader offHeap = new TransactionsLoader();
+        offHeap.loadOffHeap("/TransactionsLoaderTest/TransactionsUnsorted.csv", null);
+        TransactionsLoader sorted = new TransactionsLoader();
+        sorted.loadSorted(sortedFile, 40, 4);
+
+        for (TransactionsLoader transactionsLoader : new TransactionsLoader[]{heap, offHeap, sorted}) {
+            Footprint.Structure footprint = transactionsLoader.footprint().structure(Footprint.TRANSACTIONS);
+            assertEquals(5, transactionsLoader.size(), "Transactions of the same date are counted separately");
+            assertEquals(5, footprint.records());
+            assertEquals(2, footprint.distinctKeys());
+            assertTrue(footprint.heapBytes() > 0);
+        }
+        assertEquals(5L * OffHeapTransactionStore.ENTRY_BYTES, offHeap.footprint().offHeapBytes());
+
+        long indexOnly = sorted.footprint().heapBytes();
+        sorted.getValue("Investment1", LocalDate.of(2020, 1, 16));
+        assertTrue(sorted.footprint().heapBytes() > indexOnly, "Cached blocks are counted");
+    }
+
+    @Test
+    void append() {
+        TransactionsLoader transactionsLoader = new TransactionsLoader();
+        transactionsLoader.load("/TransactionsLoaderTest/Transactions.csv");
+
+        Set<String> appended = transactionsLoader.append(List.of(
+                new TransactionsLoader.Transaction("Investment1", LocalDate.of(2020, 1, 15), BigDecimal.ONE),
+                new TransactionsLoader.Transaction("Investment3", LocalDate.of(2020, 1, 1), BigDecimal.TEN)));
+
+        assertEquals(Set.of("Investment1", "Investment3"), appended);
+        assertEquals(6, transactionsLoader.size(), "Transaction of the same date is counted as a record");
+        assertEquals(new BigDecimal("38.4"), transactionsLoader.getValue("Investment1", LocalDate.of(2020, 1, 16)), "Appended transaction is summed");
+        assertEquals(BigDecimal.valueOf(25.3), transactionsLoader.getValue("Investment1", LocalDate.of(2020, 1, 15)), "Earlier values are kept");
+        assertEquals(BigDecimal.TEN, transactionsLoader.getValue("Investment3", LocalDate.of(2020, 1, 2)), "Transaction of a new investment");
+
+        TransactionsLoader offHeap = new TransactionsLoader();
+        offHeap.loadOffHeap("/TransactionsLoaderTest/Transactions.csv", null);
+        assertThrows(IllegalStateException.class, () -> offHeap.append(List.of()), "Only heap can be appended to");
+    }
+
+    private static List<Path> listFiles(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void assertTransactions(TransactionsLoader transactionsLoader) {
         assertEquals(BigDecimal.ZERO, transactionsLoader.getValue("Investment1", LocalDate.of(2016, 1 ,3)), "Investment1 has no transactions before 2016-01-03");
         assertEquals(BigDecimal.valueOf(10.2), transactionsLoader.getValue("Investment1", LocalDate.of(2016, 1 ,4)), "Investment1 has transactions on 2016-01-03");
         assertEquals(BigDecimal.valueOf(25.3), transactionsLoader.getValue("Investment1", LocalDate.of(2018, 1 ,13)), "Investment1 has transactions on 2018-01-12");
         assertEquals(BigDecimal.valueOf(37.4), transactionsLoader.getValue("Investment1", LocalDate.of(2020, 1 ,16)), "Investment1 has transactions on 2020-01-15");
         assertEquals(BigDecimal.valueOf(13.1), transactionsLoader.getValue("Investment2", LocalDate.of(2016, 1 ,16)), "Investment2 has transactions on 2016-01-15");
     }
-}
\ No newline at end of file
+}
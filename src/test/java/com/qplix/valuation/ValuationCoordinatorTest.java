@@ -0,0 +1,145 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ValuationCoordinatorTest {
+
+    private static final LocalDate DATE = LocalDate.of(2020, 1, 2);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test() {
+        try (ValuationCoordinator coordinator = ValuationCoordinator.start(
+                "/DatasetSharderTest/Investments.csv",
+                "/DatasetSharderTest/Transactions.csv",
+                "/DatasetSharderTest/Quotes.csv",
+                2, tempDir)) {
+
+            assertThat(coordinator.valuate("Investor1", DATE)).isEqualByComparingTo("252.5");
+            assertThat(coordinator.valuate("Unknown", DATE)).isEqualByComparingTo(BigDecimal.ZERO);
+
+            List<BigDecimal> result = coordinator.valuate(List.of(
+                    new ValuationCoordinator.Request("Investor4", DATE),
+                    new ValuationCoordinator.Request("Investor1", DATE),
+                    new ValuationCoordinator.Request("Unknown", DATE),
+                    new ValuationCoordinator.Request("Investor3", DATE),
+                    new ValuationCoordinator.Request("Investor2", DATE)));
+
+            assertThat(result)
+                    .as("Results are merged in the order of the requests")
+                    .usingElementComparator(BigDecimal::compareTo)
+                    .containsExactly(new BigDecimal("500000"), new BigDecimal("252.5"), BigDecimal.ZERO,
+                            new BigDecimal("300021.0"), new BigDecimal("400"));
+
+            // both shards valuate their parts of the batch at the same time
+            List<ValuationCoordinator.Request> requests = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                requests.add(new ValuationCoordinator.Request(i % 2 == 0 ? "Investor1" : "Investor4", DATE));
+            }
+            List<BigDecimal> values = coordinator.valuate(requests);
+            assertThat(values).hasSize(requests.size());
+            assertThat(values.get(values.size() - 2)).isEqualByComparingTo("252.5");
+            assertThat(values.get(values.size() - 1)).isEqualByComparingTo("500000");
+        }
+    }
+
+    @Test
+    void batchLargerThanSocketBuffers() throws Exception {
+        // requests and responses padded far beyond what the socket buffers of both sides hold together,
+        // writing the whole batch before reading the responses blocks both sides
+        String response = "OK 1." + "0".repeat(100);
+        try (ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread worker = new Thread(() -> echo(server, response));
+            worker.setDaemon(true);
+            worker.start();
+
+            ValuationCoordinator.WorkerConnection connection =
+                    new ValuationCoordinator.WorkerConnection(server.getLocalPort());
+            try {
+                List<String> lines = Collections.nCopies(1_000_000, "Investor" + "0".repeat(100) + ";" + DATE);
+                List<BigDecimal> values = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                        () -> connection.send(lines).join());
+                assertThat(values).hasSize(lines.size()).allMatch(value -> value.compareTo(BigDecimal.ONE) == 0);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    void failedRequestsDoNotShiftResponses() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/DatasetSharderTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/DatasetSharderTest/Investments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/DatasetSharderTest/Transactions.csv");
+
+        try (ValuationWorker worker = new ValuationWorker(new ValuationRunner(quotes, investments, transactions), 0)) {
+            worker.start();
+            ValuationCoordinator.WorkerConnection connection =
+                    new ValuationCoordinator.WorkerConnection(worker.getPort());
+            try {
+                CompletableFuture<List<BigDecimal>> failed =
+                        connection.send(List.of("Investor1;" + DATE, "Investor;1;" + DATE, "Investor3;" + DATE));
+                assertThatThrownBy(failed::join)
+                        .hasCauseInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("Investor;1");
+
+                assertThat(connection.send(List.of("Investor4;" + DATE, "Investor1;" + DATE)).join())
+                        .as("Responses of the failed batch were consumed")
+                        .usingElementComparator(BigDecimal::compareTo)
+                        .containsExactly(new BigDecimal("500000"), new BigDecimal("252.5"));
+            } finally {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Answer every request line like {@link ValuationWorker}, flushing once no more requests are buffered.
+     */
+    private static void echo(ServerSocket server, String response) {
+        try (Socket socket = server.accept();
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                writer.write(response);
+                writer.newLine();
+                if (!reader.ready()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
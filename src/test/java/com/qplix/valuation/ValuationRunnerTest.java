@@ -1,14 +1,23 @@
 package com.qplix.valuation;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,18 +28,23 @@ class ValuationRunnerTest {
     private QuotesLoader quotesLoader;
     private InvestmentsLoader investmentsLoader;
     private TransactionsLoader transactionsLoader;
+    private SymbolTable symbols;
 
     @BeforeEach
     void setUp() {
         quotesLoader = mock(QuotesLoader.class);
         investmentsLoader = mock(InvestmentsLoader.class);
         transactionsLoader = mock(TransactionsLoader.class);
+        symbols = new SymbolTable();
+        when(quotesLoader.symbols()).thenReturn(symbols);
+        when(investmentsLoader.symbols()).thenReturn(symbols);
+        when(transactionsLoader.symbols()).thenReturn(symbols);
         valuationRunner = new ValuationRunner(quotesLoader, investmentsLoader, transactionsLoader);
     }
 
     @Test
     void valuateInvestorWithNoInvestments() {
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(null);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(null);
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -42,13 +56,13 @@ class ValuationRunnerTest {
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
 
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
         when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(investmentTree.getAssetId()).thenReturn("STOCK123");
-        when(investmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("10"));
-        when(quotesLoader.getQuote("STOCK123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("100"));
+        when(investmentTree.getAssetSymbol()).thenReturn(symbol("STOCK123"));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("10"));
+        when(quotesLoader.getQuote(symbol("STOCK123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("100"));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -60,13 +74,13 @@ class ValuationRunnerTest {
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
 
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
         when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(investmentTree.getAssetId()).thenReturn("STOCK123");
-        when(investmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("10"));
-        when(quotesLoader.getQuote("STOCK123", LocalDate.of(2023, 1, 1))).thenReturn(nullable(BigDecimal.class));
+        when(investmentTree.getAssetSymbol()).thenReturn(symbol("STOCK123"));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("10"));
+        when(quotesLoader.getQuote(symbol("STOCK123"), LocalDate.of(2023, 1, 1))).thenReturn(nullable(BigDecimal.class));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -78,13 +92,13 @@ class ValuationRunnerTest {
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
 
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
         when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(investmentTree.getAssetId()).thenReturn("STOCK123");
-        when(investmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(quotesLoader.getQuote(eq("STOCK123"), eq(LocalDate.of(2023, 1, 1)))).thenReturn(new BigDecimal("100"));
-        when(transactionsLoader.getValue(eq("INVEST123"), eq(LocalDate.of(2023, 1, 1)))).thenReturn(nullable(BigDecimal.class));
+        when(investmentTree.getAssetSymbol()).thenReturn(symbol("STOCK123"));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(quotesLoader.getQuote(eq(symbol("STOCK123")), eq(LocalDate.of(2023, 1, 1)))).thenReturn(new BigDecimal("100"));
+        when(transactionsLoader.getValue(eq(symbol("INVEST123")), eq(LocalDate.of(2023, 1, 1)))).thenReturn(nullable(BigDecimal.class));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -96,11 +110,11 @@ class ValuationRunnerTest {
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
 
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
         when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.RealEstate);
-        when(investmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("500000"));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("500000"));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -112,11 +126,11 @@ class ValuationRunnerTest {
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
 
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
         when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.RealEstate);
-        when(investmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(nullable(BigDecimal.class));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(nullable(BigDecimal.class));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
 
@@ -129,24 +143,24 @@ class ValuationRunnerTest {
         // we have Investor INV123 which invests into Fund FUND123 via INVEST123
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investorInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investorInvestmentTree));
         when(investorInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(investorInvestmentTree.getAssetId()).thenReturn("FUND123");
-        when(investorInvestmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("0.5"));
+        when(investorInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(investorInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("0.5"));
 
         // we have fund FUND123 which invests into ISIN0 via INVEST456
         InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND123")).thenReturn(fundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
         when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
         when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(fundInvestmentTree.getAssetId()).thenReturn("ISIN0");
-        when(fundInvestmentTree.getInvestmentId()).thenReturn("INVEST456");
-        when(transactionsLoader.getValue("INVEST456", LocalDate.of(2023, 1, 1)))
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("100"));
-        when(quotesLoader.getQuote("ISIN0", LocalDate.of(2023, 1, 1)))
+        when(quotesLoader.getQuote(symbol("ISIN0"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("1000"));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
@@ -161,24 +175,24 @@ class ValuationRunnerTest {
         // we have Investor INV123 which invests into Fund FUND123 via INVEST123
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investorInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investorInvestmentTree));
         when(investorInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(investorInvestmentTree.getAssetId()).thenReturn("FUND123");
-        when(investorInvestmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("0.5"));
+        when(investorInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(investorInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1))).thenReturn(new BigDecimal("0.5"));
 
         // we have fund FUND123 which invests into ISIN0 via INVEST456
         InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND123")).thenReturn(fundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
         when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
         when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(fundInvestmentTree.getAssetId()).thenReturn("ISIN0");
-        when(fundInvestmentTree.getInvestmentId()).thenReturn("INVEST456");
-        when(transactionsLoader.getValue("INVEST456", LocalDate.of(2023, 1, 1)))
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("100"));
-        when(quotesLoader.getQuote("ISIN0", LocalDate.of(2023, 1, 1)))
+        when(quotesLoader.getQuote(symbol("ISIN0"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(nullable(BigDecimal.class));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
@@ -194,36 +208,36 @@ class ValuationRunnerTest {
         // we have Investor INV123 which invests into Fund FUND123 via INVEST123
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investorInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investorInvestmentTree));
         when(investorInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(investorInvestmentTree.getAssetId()).thenReturn("FUND123");
-        when(investorInvestmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1)))
+        when(investorInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(investorInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("0.5"));
 
         // we have fund FUND123 which invests into FUND456 via INVEST456
         InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND123")).thenReturn(fundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
         when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
         when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(fundInvestmentTree.getAssetId()).thenReturn("FUND456");
-        when(fundInvestmentTree.getInvestmentId()).thenReturn("INVEST456");
-        when(transactionsLoader.getValue("INVEST456", LocalDate.of(2023, 1, 1)))
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND456"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("0.2"));
 
         // we have fund FUND456 which invests into ISIN0 via INVEST789
         InvestmentsLoader.InvestorTree nestedFundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree nestedFundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND456")).thenReturn(nestedFundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND456"))).thenReturn(nestedFundTree);
         when(nestedFundTree.getUnderlyings()).thenReturn(List.of(nestedFundInvestmentTree));
         when(nestedFundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(nestedFundInvestmentTree.getAssetId()).thenReturn("ISIN0");
-        when(nestedFundInvestmentTree.getInvestmentId()).thenReturn("INVEST789");
-        when(transactionsLoader.getValue("INVEST789", LocalDate.of(2023, 1, 1)))
+        when(nestedFundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(nestedFundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST789"));
+        when(transactionsLoader.getValue(symbol("INVEST789"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("100"));
-        when(quotesLoader.getQuote("ISIN0", LocalDate.of(2023, 1, 1)))
+        when(quotesLoader.getQuote(symbol("ISIN0"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("1000"));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
@@ -238,36 +252,36 @@ class ValuationRunnerTest {
         // we have Investor INV123 which invests into Fund FUND123 via INVEST123
         InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree investorInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("INV123")).thenReturn(investorTree);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
         when(investorTree.getUnderlyings()).thenReturn(List.of(investorInvestmentTree));
         when(investorInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(investorInvestmentTree.getAssetId()).thenReturn("FUND123");
-        when(investorInvestmentTree.getInvestmentId()).thenReturn("INVEST123");
-        when(transactionsLoader.getValue("INVEST123", LocalDate.of(2023, 1, 1)))
+        when(investorInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(investorInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("0.5"));
 
         // we have fund FUND123 which invests into FUND456 via INVEST456
         InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND123")).thenReturn(fundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
         when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
         when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
-        when(fundInvestmentTree.getAssetId()).thenReturn("FUND456");
-        when(fundInvestmentTree.getInvestmentId()).thenReturn("INVEST456");
-        when(transactionsLoader.getValue("INVEST456", LocalDate.of(2023, 1, 1)))
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("FUND456"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("0.2"));
 
         // we have fund FUND456 which invests into ISIN0 via INVEST789
         InvestmentsLoader.InvestorTree nestedFundTree = mock(InvestmentsLoader.InvestorTree.class);
         InvestmentsLoader.InvestmentTree nestedFundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
-        when(investmentsLoader.getInvestorTree("FUND456")).thenReturn(nestedFundTree);
+        when(investmentsLoader.getInvestorTree(symbol("FUND456"))).thenReturn(nestedFundTree);
         when(nestedFundTree.getUnderlyings()).thenReturn(List.of(nestedFundInvestmentTree));
         when(nestedFundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
-        when(nestedFundInvestmentTree.getAssetId()).thenReturn("ISIN0");
-        when(nestedFundInvestmentTree.getInvestmentId()).thenReturn("INVEST789");
-        when(transactionsLoader.getValue("INVEST789", LocalDate.of(2023, 1, 1)))
+        when(nestedFundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(nestedFundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST789"));
+        when(transactionsLoader.getValue(symbol("INVEST789"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(new BigDecimal("100"));
-        when(quotesLoader.getQuote("ISIN0", LocalDate.of(2023, 1, 1)))
+        when(quotesLoader.getQuote(symbol("ISIN0"), LocalDate.of(2023, 1, 1)))
                 .thenReturn(nullable(BigDecimal.class));
 
         BigDecimal result = valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1));
@@ -276,4 +290,355 @@ class ValuationRunnerTest {
                 .as("The quote is missing, which leads to both funds having null value, which leads to ZERO valuation")
                 .isEqualByComparingTo(BigDecimal.ZERO);
     }
-}
\ No newline at end of file
+
+    @Test
+    void valuateScenariosSharesFundValues() {
+        LocalDate date = LocalDate.of(2023, 1, 1);
+
+        // we have Investor INV123 which invests twice into Fund FUND123 (INVEST123, INVEST124) and into ISIN1 (INVEST125)
+        InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
+        InvestmentsLoader.InvestmentTree firstFundInvestment = mock(InvestmentsLoader.InvestmentTree.class);
+        InvestmentsLoader.InvestmentTree secondFundInvestment = mock(InvestmentsLoader.InvestmentTree.class);
+        InvestmentsLoader.InvestmentTree stockInvestment = mock(InvestmentsLoader.InvestmentTree.class);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
+        when(investorTree.getUnderlyings()).thenReturn(List.of(firstFundInvestment, secondFundInvestment, stockInvestment));
+        when(firstFundInvestment.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
+        when(firstFundInvestment.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(firstFundInvestment.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), date)).thenReturn(new BigDecimal("0.5"));
+        when(secondFundInvestment.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
+        when(secondFundInvestment.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(secondFundInvestment.getInvestmentSymbol()).thenReturn(symbol("INVEST124"));
+        when(transactionsLoader.getValue(symbol("INVEST124"), date)).thenReturn(new BigDecimal("0.5"));
+        when(stockInvestment.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
+        when(stockInvestment.getAssetSymbol()).thenReturn(symbol("ISIN1"));
+        when(stockInvestment.getInvestmentSymbol()).thenReturn(symbol("INVEST125"));
+        when(transactionsLoader.getValue(symbol("INVEST125"), date)).thenReturn(new BigDecimal("10"));
+        when(quotesLoader.getQuote(symbol("ISIN1"), date)).thenReturn(new BigDecimal("100"));
+
+        // we have fund FUND123 which invests into ISIN0 via INVEST456
+        InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
+        InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
+        when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
+        when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), date)).thenReturn(new BigDecimal("100"));
+        when(quotesLoader.getQuote(symbol("ISIN0"), date)).thenReturn(new BigDecimal("1000"));
+
+        List<BigDecimal> result = valuationRunner.valuateScenarios("INV123", date, List.of(
+                QuoteScenario.ofMultipliers("Base", Map.of()),
+                QuoteScenario.ofMultipliers("ISIN0 -10%", Map.of("ISIN0", new BigDecimal("0.9"))),
+                new QuoteScenario("ISIN1 at 50", Map.of("ISIN1", new BigDecimal("50")), Map.of("ISIN1", new BigDecimal("2")))));
+
+        assertEquals(List.of(new BigDecimal("2000.0"), new BigDecimal("1900.00"), new BigDecimal("1500.0")), result,
+                "Two times 0.5% of the fund worth 100 * 1000 and 10 shares worth 100, shocked per scenario");
+        verify(transactionsLoader, times(1)).getValue(symbol("INVEST456"), date);
+        verify(quotesLoader, times(1)).getQuote(symbol("ISIN0"), date);
+        assertEquals(valuationRunner.valuate("INV123", date), result.get(0), "Base scenario is the regular valuation");
+    }
+
+    @Test
+    void valuateScenariosWithoutQuote() {
+        LocalDate date = LocalDate.of(2023, 1, 1);
+        InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
+        InvestmentsLoader.InvestmentTree investmentTree = mock(InvestmentsLoader.InvestmentTree.class);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
+        when(investorTree.getUnderlyings()).thenReturn(List.of(investmentTree));
+        when(investmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
+        when(investmentTree.getAssetSymbol()).thenReturn(symbol("STOCK123"));
+        when(investmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), date)).thenReturn(new BigDecimal("10"));
+
+        List<BigDecimal> result = valuationRunner.valuateScenarios("INV123", date, List.of(
+                QuoteScenario.ofMultipliers("Base", Map.of("STOCK123", new BigDecimal("2"))),
+                new QuoteScenario("Quoted", Map.of("STOCK123", new BigDecimal("100")), Map.of())));
+
+        Assertions.assertThat(result.get(0))
+                .as("Multiplier does not create a missing quote")
+                .isEqualByComparingTo(BigDecimal.ZERO);
+        assertEquals(new BigDecimal("1000"), result.get(1), "Override applies even without loaded quote");
+    }
+
+    @Test
+    void valuateChange() {
+        LocalDate from = LocalDate.of(2023, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 1);
+
+        // we have Investor INV123 which invests into Fund FUND123 via INVEST123 and into real estate via INVEST789
+        InvestmentsLoader.InvestorTree investorTree = mock(InvestmentsLoader.InvestorTree.class);
+        InvestmentsLoader.InvestmentTree fundInvestment = mock(InvestmentsLoader.InvestmentTree.class);
+        InvestmentsLoader.InvestmentTree realEstateInvestment = mock(InvestmentsLoader.InvestmentTree.class);
+        when(investmentsLoader.getInvestorTree(symbol("INV123"))).thenReturn(investorTree);
+        when(investorTree.getUnderlyings()).thenReturn(List.of(fundInvestment, realEstateInvestment));
+        when(fundInvestment.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Fonds);
+        when(fundInvestment.getAssetSymbol()).thenReturn(symbol("FUND123"));
+        when(fundInvestment.getInvestmentSymbol()).thenReturn(symbol("INVEST123"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), from)).thenReturn(new BigDecimal("0.5"));
+        when(transactionsLoader.getChange(symbol("INVEST123"), from, to)).thenReturn(new BigDecimal("0.5"));
+        when(transactionsLoader.getValue(symbol("INVEST123"), to)).thenReturn(new BigDecimal("1.0"));
+        when(realEstateInvestment.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.RealEstate);
+        when(realEstateInvestment.getAssetSymbol()).thenReturn(symbol("Bratislava"));
+        when(realEstateInvestment.getInvestmentSymbol()).thenReturn(symbol("INVEST789"));
+        when(transactionsLoader.getValue(symbol("INVEST789"), from)).thenReturn(new BigDecimal("500000"));
+        when(transactionsLoader.getChange(symbol("INVEST789"), from, to)).thenReturn(new BigDecimal("100000"));
+        when(transactionsLoader.getValue(symbol("INVEST789"), to)).thenReturn(new BigDecimal("600000"));
+
+        // we have fund FUND123 which holds 100 shares of ISIN0 via INVEST456, the quote moves from 1000 to 1100
+        InvestmentsLoader.InvestorTree fundTree = mock(InvestmentsLoader.InvestorTree.class);
+        InvestmentsLoader.InvestmentTree fundInvestmentTree = mock(InvestmentsLoader.InvestmentTree.class);
+        when(investmentsLoader.getInvestorTree(symbol("FUND123"))).thenReturn(fundTree);
+        when(fundTree.getUnderlyings()).thenReturn(List.of(fundInvestmentTree));
+        when(fundInvestmentTree.getInvestmentType()).thenReturn(InvestmentsLoader.InvestmentType.Stock);
+        when(fundInvestmentTree.getAssetSymbol()).thenReturn(symbol("ISIN0"));
+        when(fundInvestmentTree.getInvestmentSymbol()).thenReturn(symbol("INVEST456"));
+        when(transactionsLoader.getValue(symbol("INVEST456"), from)).thenReturn(new BigDecimal("100"));
+        when(transactionsLoader.getChange(symbol("INVEST456"), from, to)).thenReturn(BigDecimal.ZERO);
+        when(transactionsLoader.getValue(symbol("INVEST456"), to)).thenReturn(new BigDecimal("100"));
+        when(quotesLoader.getQuote(symbol("ISIN0"), from)).thenReturn(new BigDecimal("1000"));
+        when(quotesLoader.getQuote(symbol("ISIN0"), to)).thenReturn(new BigDecimal("1100"));
+
+        ValuationChange result = valuationRunner.valuateChange("INV123", from, to, 1);
+
+        assertEquals(new BigDecimal("500500.0"), result.valueFrom(), "0.5% of fund worth 100000 and real estate worth 500000");
+        assertEquals(new BigDecimal("601100.0"), result.valueTo(), "1% of fund worth 110000 and real estate worth 600000");
+        assertEquals(new BigDecimal("100600.0"), result.change());
+        assertEquals(valuationRunner.valuate("INV123", to).subtract(valuationRunner.valuate("INV123", from)), result.change(),
+                "Change is the difference of two valuations");
+        Assertions.assertThat(result.largestContributions())
+                .as("Only the largest contribution is returned")
+                .containsExactly(new ValuationChange.Contribution(
+                        "INVEST789", InvestmentsLoader.InvestmentType.RealEstate, "Bratislava", new BigDecimal("100000")));
+
+        ValuationChange allContributions = valuationRunner.valuateChange("INV123", from, to, 10);
+        Assertions.assertThat(allContributions.largestContributions())
+                .hasSize(2)
+                .anyMatch(c -> c.investmentId().equals("INVEST456") && c.change().compareTo(new BigDecimal("600")) == 0);
+    }
+
+    @Test
+    void valuateAll() {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/DatasetSharderTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/DatasetSharderTest/Investments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/DatasetSharderTest/Transactions.csv");
+        ValuationRunner runner = new ValuationRunner(quotes, investments, transactions);
+        LocalDate date = LocalDate.of(2020, 1, 2);
+
+        Map<String, BigDecimal> result = runner.valuateAll(date, 2);
+
+        assertEquals(Map.of(
+                        "Investor1", new BigDecimal("252.5"),
+                        "Investor2", new BigDecimal("400"),
+                        "Investor3", new BigDecimal("300021.0"),
+                        "Investor4", new BigDecimal("500000")),
+                result, "All investors not held by a fund are valuated");
+        result.forEach((investorId, value) -> assertEquals(runner.valuate(investorId, date), value,
+                "Parallel valuation of " + investorId + " equals the single valuation"));
+        assertEquals(result, runner.valuateAll(date, 3), "The threads of the runner are reused");
+    }
+
+    @Test
+    void valuateCompacted() {
+        ValuationRunner plain = loadedRunner(false);
+        ValuationRunner compacted = loadedRunner(true);
+
+        for (LocalDate date : List.of(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 3, 1))) {
+            for (String investorId : List.of("Investor1", "Investor2", "Investor3", "Fonds1")) {
+                assertEquals(plain.valuate(investorId, date), compacted.valuate(investorId, date),
+                        "Compacted valuation of " + investorId + " as of " + date + " does not change");
+            }
+            List<QuoteScenario> scenarios =
+                    List.of(QuoteScenario.ofMultipliers("double", Map.of("ISIN1", BigDecimal.valueOf(2))));
+            assertEquals(plain.valuateScenarios("Investor1", date, scenarios),
+                    compacted.valuateScenarios("Investor1", date, scenarios));
+        }
+        LocalDate from = LocalDate.of(2020, 1, 15);
+        LocalDate to = LocalDate.of(2020, 3, 1);
+        assertEquals(plain.valuateChange("Investor1", from, to, 10).change(),
+                compacted.valuateChange("Investor1", from, to, 10).change());
+    }
+
+    @Test
+    void valuateStopsAfterDeadline() {
+        ValuationRunner runner = loadedRunner(false);
+        LocalDate date = LocalDate.of(2020, 1, 15);
+
+        Assertions.assertThatThrownBy(() -> runner.valuate("Investor1", date, Deadline.after(Duration.ZERO)))
+                .isInstanceOf(CancellationException.class);
+        assertEquals(runner.valuate("Investor1", date),
+                runner.valuate("Investor1", date, Deadline.after(Duration.ofMinutes(1))));
+        assertEquals(new InvestmentsLoader.Cost(2, 10), runner.estimateCost("Investor1"));
+
+        List<QuoteScenario> scenarios = List.of(QuoteScenario.ofMultipliers("Base", Map.of()));
+        Assertions.assertThatThrownBy(() ->
+                        runner.valuateScenarios("Investor1", date, scenarios, Deadline.after(Duration.ZERO)))
+                .isInstanceOf(CancellationException.class);
+        assertEquals(runner.valuateScenarios("Investor1", date, scenarios),
+                runner.valuateScenarios("Investor1", date, scenarios, Deadline.after(Duration.ofMinutes(1))));
+        LocalDate to = LocalDate.of(2020, 3, 1);
+        Assertions.assertThatThrownBy(() ->
+                        runner.valuateChange("Investor1", date, to, 10, Deadline.after(Duration.ZERO)))
+                .isInstanceOf(CancellationException.class);
+        assertEquals(runner.valuateChange("Investor1", date, to, 10),
+                runner.valuateChange("Investor1", date, to, 10, Deadline.after(Duration.ofMinutes(1))));
+    }
+
+    @Test
+    void valuateWithoutDeadlineIgnoresInterrupts() {
+        ValuationRunner runner = loadedRunner(false);
+        LocalDate date = LocalDate.of(2020, 1, 15);
+        BigDecimal expected = runner.valuate("Investor1", date);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(expected, runner.valuate("Investor1", date));
+            Assertions.assertThatThrownBy(() ->
+                            runner.valuate("Investor1", date, Deadline.after(Duration.ofMinutes(1))))
+                    .as("Valuation with a deadline stops when interrupted")
+                    .isInstanceOf(CancellationException.class);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void deadlineBoundsWaitForLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(quotesLoader).load("/Quotes.csv");
+        Thread load = new Thread(valuationRunner::load);
+        load.start();
+        try {
+            Assertions.assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+
+            Assertions.assertThatThrownBy(() -> assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                            valuationRunner.valuate("INV123", LocalDate.of(2023, 1, 1),
+                                    Deadline.after(Duration.ofMillis(100)))))
+                    .isInstanceOf(CancellationException.class);
+            Assertions.assertThatThrownBy(() -> valuationRunner.estimateCost("INV123",
+                            Deadline.after(Duration.ofMillis(10))))
+                    .isInstanceOf(CancellationException.class);
+        } finally {
+            release.countDown();
+            load.join();
+        }
+    }
+
+    @Test
+    void valuateParallel() {
+        ValuationRunner sequential = loadedRunner(false);
+        ValuationRunner parallel = loadedRunner(false);
+
+        for (int threshold : List.of(1, 2, 100)) {
+            parallel.setParallelThreshold(threshold);
+            for (LocalDate date : List.of(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 3, 1))) {
+                for (String investorId : List.of("Investor1", "Investor2", "Investor3", "Fonds1", "Unknown")) {
+                    assertEquals(sequential.valuate(investorId, date), parallel.valuate(investorId, date),
+                            "Parallel valuation of " + investorId + " as of " + date + " with threshold " + threshold);
+                }
+            }
+        }
+        Assertions.assertThatThrownBy(() ->
+                        parallel.valuate("Investor1", LocalDate.of(2020, 1, 15), Deadline.after(Duration.ZERO)))
+                .isInstanceOf(CancellationException.class);
+        Assertions.assertThatThrownBy(() -> parallel.setParallelThreshold(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void valuateCyclicFunds() {
+        ValuationRunner runner = cyclicRunner();
+        LocalDate date = LocalDate.of(2020, 3, 1);
+
+        for (int threshold : List.of(0, 1, 100)) {
+            runner.setParallelThreshold(threshold);
+            Assertions.assertThatThrownBy(() -> assertTimeoutPreemptively(Duration.ofSeconds(10),
+                            () -> runner.valuate("Investor1", date)))
+                    .as("Fonds1 holds itself through Fonds2, threshold " + threshold)
+                    .isInstanceOf(IllegalStateException.class);
+            Assertions.assertThat(runner.valuate("Investor2", date)).isEqualByComparingTo("22.5");
+        }
+    }
+
+    @Test
+    void valuateScenariosOfCyclicFunds() {
+        ValuationRunner runner = cyclicRunner();
+        LocalDate date = LocalDate.of(2020, 3, 1);
+        List<QuoteScenario> scenarios = List.of(QuoteScenario.ofMultipliers("Base", Map.of()),
+                QuoteScenario.ofMultipliers("ISIN0 x2", Map.of("ISIN0", new BigDecimal("2"))));
+
+        Assertions.assertThatThrownBy(() -> assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> runner.valuateScenarios("Investor1", date, scenarios)))
+                .as("Fonds1 holds itself through Fonds2")
+                .isInstanceOf(IllegalStateException.class);
+        Assertions.assertThat(runner.valuateScenarios("Investor2", date, scenarios))
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("22.5"), new BigDecimal("45"));
+    }
+
+    @Test
+    void valuateChangeOfCyclicFunds() {
+        ValuationRunner runner = cyclicRunner();
+        LocalDate from = LocalDate.of(2019, 12, 1);
+        LocalDate to = LocalDate.of(2020, 3, 1);
+
+        Assertions.assertThatThrownBy(() -> assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> runner.valuateChange("Investor1", from, to, 10)))
+                .as("Fonds1 holds itself through Fonds2")
+                .isInstanceOf(IllegalStateException.class);
+        Assertions.assertThat(runner.valuateChange("Investor2", from, to, 10).change()).isEqualByComparingTo("22.5");
+    }
+
+    @Test
+    void loadersShareSymbols() {
+        QuotesLoader quotes = new QuotesLoader();
+        InvestmentsLoader investments = new InvestmentsLoader();
+        TransactionsLoader transactions = new TransactionsLoader();
+        new ValuationRunner(quotes, investments, transactions);
+        Assertions.assertThat(quotes.symbols()).isSameAs(investments.symbols()).isSameAs(transactions.symbols());
+
+        InvestmentsLoader loaded = new InvestmentsLoader();
+        loaded.load("/ValuationRunnerTest/Investments.csv");
+        Assertions.assertThatThrownBy(() -> new ValuationRunner(new QuotesLoader(), loaded, new TransactionsLoader()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Investor1 holds Fonds1, which holds itself through Fonds2, Investor2 holds only a stock.
+     */
+    private static ValuationRunner cyclicRunner() {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/ValuationRunnerTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/ValuationRunnerTest/CyclicInvestments.csv");
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/ValuationRunnerTest/CyclicTransactions.csv");
+        return new ValuationRunner(quotes, investments, transactions);
+    }
+
+    private static ValuationRunner loadedRunner(boolean compact) {
+        SymbolTable symbols = new SymbolTable();
+        QuotesLoader quotes = new QuotesLoader(symbols);
+        quotes.load("/ValuationRunnerTest/Quotes.csv");
+        InvestmentsLoader investments = new InvestmentsLoader(symbols);
+        investments.load("/ValuationRunnerTest/Investments.csv");
+        Map<String, String> mergedInvestments = compact ? investments.compact() : Map.of();
+        TransactionsLoader transactions = new TransactionsLoader(symbols);
+        transactions.load("/ValuationRunnerTest/Transactions.csv", investmentId -> true, mergedInvestments);
+        return new ValuationRunner(quotes, investments, transactions);
+    }
+
+    private int symbol(String name) {
+        return symbols.intern(name);
+    }
+}
@@ -0,0 +1,183 @@
+package com.qplix.valuation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ValuationServerTest {
+
+    private ValuationRunner runner;
+    private ValuationServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() {
+        runner = mock(ValuationRunner.class);
+        when(runner.estimateCost(any(), any())).thenReturn(new InvestmentsLoader.Cost(1, 1));
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void single() throws Exception {
+        when(runner.valuate(eq("INV123"), eq(LocalDate.of(2023, 1, 1)), any())).thenReturn(new BigDecimal("1000.50"));
+        start(4);
+
+        HttpResponse<String> response = get("/valuation?investorId=INV123&date=2023-01-01");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("1000.50", response.body());
+    }
+
+    @Test
+    void singleWithInvalidDate() throws Exception {
+        start(4);
+
+        HttpResponse<String> response = get("/valuation?investorId=INV123&date=yesterday");
+
+        assertEquals(400, response.statusCode());
+    }
+
+    @Test
+    void batch() throws Exception {
+        when(runner.valuate(eq("INV1"), eq(LocalDate.of(2023, 1, 1)), any())).thenReturn(new BigDecimal("1"));
+        when(runner.valuate(eq("INV2"), eq(LocalDate.of(2024, 1, 1)), any())).thenReturn(new BigDecimal("2"));
+        start(4);
+
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(uri("/valuation/batch"))
+                        .POST(HttpRequest.BodyPublishers.ofString("INV1;2023-01-01\nINV2;2024-01-01\n"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("INV1;2023-01-01;1\nINV2;2024-01-01;2\n", response.body());
+    }
+
+    @Test
+    void series() throws Exception {
+        when(runner.valuate(eq("INV1"), any(), any())).thenReturn(BigDecimal.TEN);
+        start(4);
+
+        HttpResponse<String> response = get("/valuation/series?investorId=INV1&from=2023-01-01&to=2023-01-03");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("2023-01-01;10\n2023-01-02;10\n2023-01-03;10\n", response.body());
+    }
+
+    @Test
+    void rejectsRequestsAboveInFlightLimit() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(runner.valuate(eq("SLOW"), eq(LocalDate.of(2023, 1, 1)), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return BigDecimal.ONE;
+        });
+        start(1);
+
+        CompletableFuture<HttpResponse<String>> slow = client.sendAsync(
+                HttpRequest.newBuilder(uri("/valuation?investorId=SLOW&date=2023-01-01")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertThat(entered.await(10, TimeUnit.SECONDS)).as("Slow request should be in flight").isTrue();
+
+        HttpResponse<String> rejected = get("/valuation?investorId=OTHER&date=2023-01-01");
+        assertEquals(503, rejected.statusCode());
+        verify(runner, never()).estimateCost(eq("OTHER"), any()); // rejected before the cost is estimated
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode(), "Health is available even when the server is saturated");
+        assertThat(health.body()).contains("inFlight=1", "rejected=1");
+
+        release.countDown();
+        assertEquals(200, slow.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    void stopsValuationAfterDeadline() throws Exception {
+        when(runner.valuate(eq("SLOW"), any(), any())).thenAnswer(invocation -> {
+            Deadline deadline = invocation.getArgument(2);
+            while (true) {
+                deadline.check();
+                Thread.sleep(5);
+            }
+        });
+        server = new ValuationServer(runner, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4,
+                Duration.ofMillis(100), 1000, Duration.ofSeconds(10));
+        server.start();
+
+        HttpResponse<String> response = get("/valuation?investorId=SLOW&date=2023-01-01");
+
+        assertEquals(504, response.statusCode());
+        assertThat(get("/health").body()).contains("timedOut=1", "inFlight=0");
+    }
+
+    @Test
+    void valuatesExpensiveRequestsInBackground() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(runner.estimateCost(eq("DEEP"), any())).thenReturn(new InvestmentsLoader.Cost(100, 5000));
+        when(runner.valuate(eq("DEEP"), any(), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return BigDecimal.TEN;
+        });
+        when(runner.valuate(eq("INV1"), any(), any())).thenReturn(BigDecimal.ONE);
+        server = new ValuationServer(runner, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1,
+                Duration.ofSeconds(10), 1000, Duration.ofSeconds(10));
+        server.start();
+
+        CompletableFuture<HttpResponse<String>> deep = client.sendAsync(
+                HttpRequest.newBuilder(uri("/valuation?investorId=DEEP&date=2023-01-01")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertThat(entered.await(10, TimeUnit.SECONDS)).as("Expensive request should be valuated").isTrue();
+
+        HttpResponse<String> interactive = get("/valuation?investorId=INV1&date=2023-01-01");
+        assertEquals(200, interactive.statusCode(), "Expensive request does not occupy the in-flight limit");
+        assertEquals("1", interactive.body());
+
+        release.countDown();
+        assertEquals("10", deep.get(10, TimeUnit.SECONDS).body());
+        assertThat(get("/health").body()).contains("expensive=1");
+    }
+
+    private void start(int maxInFlight) throws Exception {
+        server = new ValuationServer(runner, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxInFlight);
+        server.start();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + path);
+    }
+}